@@ -15,27 +15,46 @@
  */
 package org.springframework.samples.petclinic.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
 import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
 import org.springframework.cloud.client.circuitbreaker.Customizer;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.samples.petclinic.api.application.RequestCoalescer;
+import org.springframework.samples.petclinic.api.boundary.web.StaticAssetsHandler;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.RequestBudget;
+import org.springframework.samples.petclinic.api.system.WebClientFactory;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.http.HttpProtocol;
 
+import java.io.IOException;
 import java.time.Duration;
 
 
@@ -44,6 +63,7 @@ import java.time.Duration;
  */
 @EnableDiscoveryClient
 @SpringBootApplication
+@EnableConfigurationProperties(ApiGatewayProperties.class)
 public class ApiGatewayApplication {
 
     public static void main(String[] args) {
@@ -62,16 +82,63 @@ public class ApiGatewayApplication {
         return WebClient.builder();
     }
 
+    /**
+     * DTOs declare Jackson filters for the sparse fieldsets, they serialize all their fields by default
+     */
+    @Bean
+    Jackson2ObjectMapperBuilderCustomizer fieldSelectionFilters() {
+        return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+
+    /**
+     * Smile codecs configured like the JSON ones, the downstream services answer the gateway clients in Smile
+     */
+    @Bean
+    CodecCustomizer smileCodecs(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper smileMapper = builder.factory(new SmileFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, WebClientFactory.APPLICATION_SMILE));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper, WebClientFactory.APPLICATION_SMILE));
+        };
+    }
+
+    /**
+     * Routes use h2c like the service clients, the stream limit of the shared proxy pool is the one advertised by the services
+     */
+    @Bean
+    HttpClientCustomizer h2cRoutes(ApiGatewayProperties properties) {
+        return httpClient -> properties.getH2c().isEnabled() ? httpClient.protocol(HttpProtocol.H2C) : httpClient;
+    }
+
+    /**
+     * Retries of all the service clients, starting full so that the first calls after a start can be retried
+     */
+    @Bean
+    RequestBudget retryBudget(ApiGatewayProperties properties) {
+        ApiGatewayProperties.RetryBudget retryBudget = properties.getRetryBudget();
+        return new RequestBudget(retryBudget.getRatio(), retryBudget.getMaxBudget(), retryBudget.getMaxBudget());
+    }
+
+    /**
+     * Shares a single downstream load between concurrent requests for the same owner
+     */
+    @Bean
+    RequestCoalescer<Integer, OwnerDetails> ownerDetailsCoalescer(MeterRegistry meterRegistry) {
+        return new RequestCoalescer<>("ownerDetails", meterRegistry);
+    }
+
     @Value("classpath:/static/index.html")
     private Resource indexHtml;
 
     /**
      * workaround solution for forwarding to index.html
+     * Fingerprinted and precompressed assets are served first, see {@link StaticAssetsHandler}
      * @see <a href="https://github.com/spring-projects/spring-boot/issues/9785">#9785</a>
      */
     @Bean
-    RouterFunction<?> routerFunction() {
-        RouterFunction router = RouterFunctions.resources("/**", new ClassPathResource("static/"))
+    RouterFunction<?> routerFunction() throws IOException {
+        RouterFunction router = new StaticAssetsHandler().route()
+            .and(RouterFunctions.resources("/**", new ClassPathResource("static/")))
             .andRoute(RequestPredicates.GET("/"),
                 request -> ServerResponse.ok().contentType(MediaType.TEXT_HTML).bodyValue(indexHtml));
         return router;
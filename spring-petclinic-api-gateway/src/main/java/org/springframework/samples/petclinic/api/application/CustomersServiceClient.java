@@ -15,25 +15,62 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerVersion;
+import org.springframework.samples.petclinic.api.system.RetryPolicy;
+import org.springframework.samples.petclinic.api.system.WebClientFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
 /**
  * @author Maciej Szarlinski
  */
 @Component
-@RequiredArgsConstructor
 public class CustomersServiceClient {
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient webClient;
+
+    private final RetryPolicy retryPolicy;
+
+    public CustomersServiceClient(WebClientFactory webClientFactory) {
+        this.webClient = webClientFactory.create("customers-service");
+        this.retryPolicy = webClientFactory.retryPolicy("customers-service");
+    }
 
     public Mono<OwnerDetails> getOwner(final int ownerId) {
-        return webClientBuilder.build().get()
+        return retryPolicy.execute(() -> webClient.get()
             .uri("http://customers-service/owners/{ownerId}", ownerId)
             .retrieve()
-            .bodyToMono(OwnerDetails.class);
+            .bodyToMono(OwnerDetails.class));
+    }
+
+    /**
+     * Cheap check of whether an owner or its pets changed, without loading them.
+     */
+    public Mono<OwnerVersion> getOwnerVersion(final int ownerId) {
+        return retryPolicy.execute(() -> webClient.get()
+            .uri("http://customers-service/owners/{ownerId}/version", ownerId)
+            .retrieve()
+            .bodyToMono(OwnerVersion.class));
+    }
+
+    /**
+     * @return the owners found, in the order of the database
+     */
+    public Mono<List<OwnerDetails>> getOwners(final List<Integer> ownerIds) {
+        return retryPolicy.execute(() -> webClient.get()
+            .uri("http://customers-service/owners?ids={ownerIds}", joinIds(ownerIds))
+            .retrieve()
+            .bodyToFlux(OwnerDetails.class)
+            .collectList());
+    }
+
+    private String joinIds(List<Integer> ownerIds) {
+        return ownerIds.stream().map(Object::toString).collect(joining(","));
     }
 }
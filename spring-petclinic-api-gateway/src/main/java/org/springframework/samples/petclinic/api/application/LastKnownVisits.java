@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last visits successfully read from visits-service for each pet, served by the circuit breaker
+ * fallback instead of an empty visit history.
+ * <p>
+ * The cache is bounded by a number of pets and a TTL. Visits are stored as parallel arrays with
+ * the dates as epoch days, rather than as {@link VisitDetails} objects. Hit, miss and eviction
+ * counts are published as {@code cache.*} metrics with {@code cache=lastKnownVisits}.
+ */
+@Component
+public class LastKnownVisits {
+
+    private static final int UNKNOWN_DATE = Integer.MIN_VALUE;
+
+    private final Cache<Integer, PetVisits> cache;
+
+    public LastKnownVisits(ApiGatewayProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getStaleVisits().getMaxSize())
+            .expireAfterWrite(properties.getStaleVisits().getTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "lastKnownVisits");
+    }
+
+    /**
+     * Remembers the visits of the given pets, pets without visits included.
+     */
+    public void put(Collection<Integer> petIds, Collection<VisitDetails> visits) {
+        Map<Integer, List<VisitDetails>> visitsByPet = new HashMap<>();
+        for (Integer petId : petIds) {
+            visitsByPet.put(petId, new ArrayList<>());
+        }
+        for (VisitDetails visit : visits) {
+            List<VisitDetails> petVisits = visitsByPet.get(visit.getPetId());
+            if (petVisits != null) {
+                petVisits.add(visit);
+            }
+        }
+        long now = System.currentTimeMillis();
+        visitsByPet.forEach((petId, petVisits) -> cache.put(petId, new PetVisits(petVisits, now)));
+    }
+
+    /**
+     * Adds the last known visits to the pets of the owner and marks the owner with the date of the
+     * oldest visits used. Pets never seen keep an empty visit history.
+     */
+    public OwnerDetails fill(OwnerDetails owner) {
+        long asOf = Long.MAX_VALUE;
+        for (PetDetails pet : owner.getPets()) {
+            PetVisits petVisits = cache.getIfPresent(pet.getId());
+            if (petVisits != null) {
+                petVisits.addTo(pet);
+                asOf = Math.min(asOf, petVisits.storedAt);
+            }
+        }
+        if (asOf != Long.MAX_VALUE) {
+            owner.setVisitsAsOf(Instant.ofEpochMilli(asOf));
+        }
+        return owner;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static final class PetVisits {
+
+        private final int[] ids;
+
+        private final int[] epochDays;
+
+        private final String[] descriptions;
+
+        private final long storedAt;
+
+        PetVisits(List<VisitDetails> visits, long storedAt) {
+            int size = visits.size();
+            this.ids = new int[size];
+            this.epochDays = new int[size];
+            this.descriptions = new String[size];
+            this.storedAt = storedAt;
+            for (int i = 0; i < size; i++) {
+                VisitDetails visit = visits.get(i);
+                ids[i] = visit.getId() == null ? 0 : visit.getId();
+                epochDays[i] = toEpochDay(visit.getDate());
+                descriptions[i] = visit.getDescription();
+            }
+        }
+
+        void addTo(PetDetails pet) {
+            for (int i = 0; i < ids.length; i++) {
+                VisitDetails visit = new VisitDetails();
+                visit.setId(ids[i]);
+                visit.setPetId(pet.getId());
+                visit.setDate(epochDays[i] == UNKNOWN_DATE ? null : LocalDate.ofEpochDay(epochDays[i]).toString());
+                visit.setDescription(descriptions[i]);
+                pet.getVisits().add(visit);
+            }
+        }
+
+        private static int toEpochDay(String date) {
+            if (date == null) {
+                return UNKNOWN_DATE;
+            }
+            try {
+                return (int) LocalDate.parse(date).toEpochDay();
+            }
+            catch (DateTimeParseException e) {
+                return UNKNOWN_DATE;
+            }
+        }
+    }
+}
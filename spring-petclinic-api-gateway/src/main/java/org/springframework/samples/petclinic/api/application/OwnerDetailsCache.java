@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded, TTL evicting cache of the aggregated {@link OwnerDetails}.
+ * <p>
+ * Entries are invalidated when owners, pets or visits are written through the gateway routes.
+ * Loads started before an invalidation are not cached, so a concurrent read cannot bring stale
+ * data back. Hit, miss and eviction counts are published as {@code cache.*} metrics with
+ * {@code cache=ownerDetails}.
+ */
+@Component
+public class OwnerDetailsCache {
+
+    private final Cache<Integer, OwnerDetails> cache;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public OwnerDetailsCache(ApiGatewayProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getCache().getMaxSize())
+            .expireAfterWrite(properties.getCache().getTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "ownerDetails");
+    }
+
+    public Mono<OwnerDetails> get(int ownerId) {
+        return Mono.justOrEmpty(cache.getIfPresent(ownerId));
+    }
+
+    /**
+     * @return a stamp to pass to {@link #put(OwnerDetails, long)} once the aggregate is loaded
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    public void put(OwnerDetails owner, long stamp) {
+        if (stamp == invalidations.get()) {
+            cache.put(owner.getId(), owner);
+            // an invalidation may have slipped in between the check and the put
+            if (stamp != invalidations.get()) {
+                cache.invalidate(owner.getId());
+            }
+        }
+    }
+
+    public void invalidateOwner(int ownerId) {
+        invalidations.incrementAndGet();
+        cache.invalidate(ownerId);
+    }
+
+    public void invalidatePet(int petId) {
+        invalidations.incrementAndGet();
+        cache.asMap().values().removeIf(owner -> owner.getPetIds().contains(petId));
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Distributes visits to their pets in a single pass.
+ * <p>
+ * Pets are indexed by id in an open addressing table keyed by primitive ints, so the join costs
+ * O(pets + visits) without boxing the keys or allocating intermediate lists per pet.
+ */
+public final class PetVisitsJoin {
+
+    private final int[] ids;
+
+    private final PetDetails[] pets;
+
+    private final int mask;
+
+    private PetVisitsJoin(int expectedPets) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedPets) * 2 - 1) << 1;
+        this.ids = new int[capacity];
+        this.pets = new PetDetails[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public static void join(OwnerDetails owner, Collection<VisitDetails> visits) {
+        join(Collections.singletonList(owner), visits);
+    }
+
+    public static void join(Collection<OwnerDetails> owners, Collection<VisitDetails> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        int petCount = 0;
+        for (OwnerDetails owner : owners) {
+            petCount += owner.getPets().size();
+        }
+        PetVisitsJoin index = new PetVisitsJoin(petCount);
+        for (OwnerDetails owner : owners) {
+            for (PetDetails pet : owner.getPets()) {
+                index.put(pet);
+            }
+        }
+        for (VisitDetails visit : visits) {
+            Integer petId = visit.getPetId();
+            if (petId != null) {
+                PetDetails pet = index.get(petId);
+                if (pet != null) {
+                    pet.getVisits().add(visit);
+                }
+            }
+        }
+    }
+
+    private void put(PetDetails pet) {
+        int slot = slot(pet.getId());
+        while (pets[slot] != null && ids[slot] != pet.getId()) {
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = pet.getId();
+        pets[slot] = pet;
+    }
+
+    private PetDetails get(int petId) {
+        int slot = slot(petId);
+        PetDetails pet;
+        while ((pet = pets[slot]) != null) {
+            if (ids[slot] == petId) {
+                return pet;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private int slot(int petId) {
+        // Fibonacci hashing spreads sequential database ids over the table
+        int hash = petId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution: concurrent subscribers asking for the same key share one in-flight load.
+ * <p>
+ * The result, empty completion or error of the load is fanned out to every subscriber of the flight,
+ * then the key is released so that the next request triggers a fresh load. A subscriber cancelling only
+ * leaves the flight; the load itself is cancelled once its last subscriber is gone.
+ *
+ * @param <K> key of the load, e.g. an owner id
+ * @param <V> loaded value
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter coalesced;
+
+    public RequestCoalescer(String name, MeterRegistry meterRegistry) {
+        this.coalesced = Counter.builder("gateway.requests.coalesced")
+            .description("Requests served by joining an identical in-flight request")
+            .tag("name", name)
+            .register(meterRegistry);
+        Gauge.builder("gateway.requests.inflight", inFlight, Map::size)
+            .description("Distinct loads currently in flight")
+            .tag("name", name)
+            .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            while (true) {
+                Flight candidate = new Flight(key);
+                Flight flight = inFlight.putIfAbsent(key, candidate);
+                if (flight == null) {
+                    candidate.join();
+                    candidate.start(loader);
+                    return candidate.result();
+                }
+                if (flight.join()) {
+                    coalesced.increment();
+                    return flight.result();
+                }
+                // the flight lost all its subscribers and is being torn down
+                inFlight.remove(key, flight);
+            }
+        });
+    }
+
+    private final class Flight {
+
+        private static final int CLOSED = -1;
+
+        private final K key;
+
+        private final Sinks.One<V> sink = Sinks.one();
+
+        private final AtomicInteger subscribers = new AtomicInteger();
+
+        private volatile Disposable upstream;
+
+        Flight(K key) {
+            this.key = key;
+        }
+
+        void start(Supplier<Mono<V>> loader) {
+            upstream = Mono.defer(loader)
+                .doFinally(signal -> inFlight.remove(key, this))
+                .subscribe(
+                    sink::tryEmitValue,
+                    sink::tryEmitError,
+                    sink::tryEmitEmpty);
+        }
+
+        Mono<V> result() {
+            return sink.asMono().doOnCancel(this::leave);
+        }
+
+        boolean join() {
+            while (true) {
+                int count = subscribers.get();
+                if (count == CLOSED) {
+                    return false;
+                }
+                if (subscribers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void leave() {
+            while (true) {
+                int count = subscribers.get();
+                if (count == 1 && subscribers.compareAndSet(1, CLOSED)) {
+                    inFlight.remove(key, this);
+                    upstream.dispose();
+                    return;
+                }
+                if (count > 1 && subscribers.compareAndSet(count, count - 1)) {
+                    return;
+                }
+                if (count < 1) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -15,13 +15,20 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.api.dto.VisitMarkers;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.HedgingPolicy;
+import org.springframework.samples.petclinic.api.system.RetryPolicy;
+import org.springframework.samples.petclinic.api.system.WebClientFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.joining;
 
@@ -29,20 +36,83 @@ import static java.util.stream.Collectors.joining;
  * @author Maciej Szarlinski
  */
 @Component
-@RequiredArgsConstructor
 public class VisitsServiceClient {
 
+    private static final List<String> SUMMARY_FIELDS = List.of("id", "date", "petId");
+
     // Could be changed for testing purpose
     private String hostname = "http://visits-service/";
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient webClient;
+
+    private final HedgingPolicy hedgingPolicy;
+
+    private final RetryPolicy retryPolicy;
+
+    private final ApiGatewayProperties.Batch batch;
+
+    public VisitsServiceClient(WebClientFactory webClientFactory) {
+        this.webClient = webClientFactory.create("visits-service");
+        this.hedgingPolicy = webClientFactory.hedgingPolicy("visits-service");
+        this.retryPolicy = webClientFactory.retryPolicy("visits-service");
+        this.batch = webClientFactory.batch("visits-service");
+    }
 
     public Mono<Visits> getVisitsForPets(final List<Integer> petIds) {
-        return webClientBuilder.build()
-            .get()
-            .uri(hostname + "pets/visits?petId={petId}", joinIds(petIds))
-            .retrieve()
-            .bodyToMono(Visits.class);
+        return getVisitsForPets(petIds, true);
+    }
+
+    /**
+     * Pets beyond the {@link ApiGatewayProperties.Batch#getChunkSize() chunk size} are looked up in chunks
+     * sent concurrently, each pet being in a single chunk.
+     *
+     * @param withDescriptions {@code false} to let visits-service skip loading and sending the descriptions
+     */
+    public Mono<Visits> getVisitsForPets(final List<Integer> petIds, boolean withDescriptions) {
+        int chunkSize = batch.getChunkSize();
+        if (petIds.size() <= chunkSize) {
+            String uri = hostname + "pets/visits?petId={petId}" + (withDescriptions ? "" : "&fields=id,date,petId");
+            return lookup(() -> webClient
+                .get()
+                .uri(uri, joinIds(petIds))
+                .retrieve()
+                .bodyToMono(Visits.class));
+        }
+        List<String> fields = withDescriptions ? null : SUMMARY_FIELDS;
+        return chunks(petIds)
+            .flatMap(chunk -> lookup(() -> webClient
+                .post()
+                .uri(hostname + "pets/visits/search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new VisitsQuery(chunk, fields))
+                .retrieve()
+                .bodyToMono(Visits.class)), batch.getConcurrency())
+            .collect(Visits::new, (visits, chunk) -> visits.getItems().addAll(chunk.getItems()));
+    }
+
+    /**
+     * Cheap check of whether the visits of the pets changed, without loading them. Pets without
+     * visits have no marker.
+     */
+    public Mono<VisitMarkers> getVisitMarkers(final List<Integer> petIds) {
+        return chunks(petIds)
+            .flatMap(chunk -> lookup(() -> webClient
+                .get()
+                .uri(hostname + "pets/visits/markers?petId={petId}", joinIds(chunk))
+                .retrieve()
+                .bodyToMono(VisitMarkers.class)), batch.getConcurrency())
+            .collect(VisitMarkers::new, (markers, chunk) -> markers.getItems().addAll(chunk.getItems()));
+    }
+
+    private Flux<List<Integer>> chunks(List<Integer> petIds) {
+        int chunkSize = batch.getChunkSize();
+        return Flux.range(0, (petIds.size() + chunkSize - 1) / chunkSize)
+            .map(chunk -> petIds.subList(chunk * chunkSize, Math.min(petIds.size(), (chunk + 1) * chunkSize)));
+    }
+
+    private <T> Mono<T> lookup(Supplier<Mono<T>> call) {
+        // a hedge does not help when the first call fails fast on its connection, a retry does
+        return retryPolicy.execute(() -> hedgingPolicy.execute(call));
     }
 
     private String joinIds(List<Integer> petIds) {
@@ -52,4 +122,7 @@ public class VisitsServiceClient {
     void setHostname(String hostname) {
         this.hostname = hostname;
     }
+
+    private record VisitsQuery(List<Integer> petIds, List<String> fields) {
+    }
 }
@@ -18,17 +18,34 @@ package org.springframework.samples.petclinic.api.boundary.web;
 import lombok.RequiredArgsConstructor;
 import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
 import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.LastKnownVisits;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.PetVisitsJoin;
+import org.springframework.samples.petclinic.api.application.RequestCoalescer;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
 import org.springframework.samples.petclinic.api.dto.Visits;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -39,39 +56,172 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/gateway")
 public class ApiGatewayController {
 
+    static final int MAX_OWNER_IDS = 100;
+
     private final CustomersServiceClient customersServiceClient;
 
     private final VisitsServiceClient visitsServiceClient;
 
     private final ReactiveCircuitBreakerFactory cbFactory;
 
+    private final OwnerDetailsCache ownerDetailsCache;
+
+    private final RequestCoalescer<Integer, OwnerDetails> ownerDetailsCoalescer;
+
+    private final LastKnownVisits lastKnownVisits;
+
+    /**
+     * Owner details with a strong {@link OwnerDetailsETag ETag}. A matching {@code If-None-Match} is
+     * answered with 304 from the cached aggregate or, on a cache miss, from the owner version and the
+     * visit markers, both much cheaper than the aggregate. The aggregate is loaded only when they
+     * changed or could not be checked.
+     */
     @GetMapping(value = "owners/{ownerId}")
-    public Mono<OwnerDetails> getOwnerDetails(final @PathVariable int ownerId) {
+    public Mono<ResponseEntity<OwnerDetails>> getOwnerDetails(
+        final @PathVariable int ownerId,
+        final @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return ownerDetails(ownerId).map(owner -> respond(owner, null));
+        }
+        return ownerDetailsCache.get(ownerId)
+            .map(owner -> respond(owner, ifNoneMatch))
+            .switchIfEmpty(Mono.defer(() -> currentETag(ownerId)
+                .filter(etag -> OwnerDetailsETag.matches(ifNoneMatch, etag))
+                .map(this::notModified)))
+            .switchIfEmpty(Mono.defer(() -> ownerDetails(ownerId).map(owner -> respond(owner, ifNoneMatch))));
+    }
+
+    private Mono<OwnerDetails> ownerDetails(final int ownerId) {
+        return ownerDetailsCache.get(ownerId)
+            .switchIfEmpty(ownerDetailsCoalescer.execute(ownerId, () -> loadOwnerDetails(ownerId)));
+    }
+
+    /**
+     * @return the tag of the current state of the owner, empty when it cannot be checked
+     */
+    private Mono<String> currentETag(final int ownerId) {
+        return customersServiceClient.getOwnerVersion(ownerId)
+            .flatMap(version -> visitsServiceClient.getVisitMarkers(version.getPetIds())
+                .map(markers -> OwnerDetailsETag.of(ownerId, version, markers.getItems())))
+            // the full load reports the failure, or serves the fallback
+            .onErrorResume(error -> Mono.empty());
+    }
+
+    private ResponseEntity<OwnerDetails> respond(OwnerDetails owner, String ifNoneMatch) {
+        String etag = OwnerDetailsETag.of(owner);
+        if (etag == null) {
+            return ResponseEntity.ok(owner);
+        }
+        if (OwnerDetailsETag.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(owner);
+    }
+
+    private ResponseEntity<OwnerDetails> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+    }
+
+    /**
+     * Owner details pruned to the requested {@link FieldSelection fields}. Unless visit descriptions
+     * are requested, a cache miss is loaded without them, or without any visit, and is not cached.
+     */
+    @GetMapping(value = "owners/{ownerId}", params = "fields")
+    public Mono<MappingJacksonValue> getOwnerDetails(final @PathVariable int ownerId,
+                                                     final @RequestParam("fields") List<String> fields) {
+        FieldSelection selection = new FieldSelection(fields);
+        Mono<OwnerDetails> ownerDetails;
+        if (selection.selects("pets.visits.description")) {
+            ownerDetails = ownerDetails(ownerId);
+        } else if (selection.selects("pets.visits")) {
+            ownerDetails = ownerDetailsCache.get(ownerId)
+                .switchIfEmpty(Mono.defer(() -> loadOwnerDetailsWithoutDescriptions(ownerId)));
+        } else {
+            ownerDetails = ownerDetailsCache.get(ownerId)
+                .switchIfEmpty(Mono.defer(() -> customersServiceClient.getOwner(ownerId)));
+        }
+        return ownerDetails.map(selection::apply);
+    }
+
+    private Mono<OwnerDetails> loadOwnerDetails(final int ownerId) {
+        final long cacheStamp = ownerDetailsCache.stamp();
         return customersServiceClient.getOwner(ownerId)
             .flatMap(owner ->
                 visitsServiceClient.getVisitsForPets(owner.getPetIds())
-                    .transform(it -> {
-                        ReactiveCircuitBreaker cb = cbFactory.create("getOwnerDetails");
-                        return cb.run(it, throwable -> emptyVisitsForPets());
-                    })
+                    .doOnNext(visits -> lastKnownVisits.put(owner.getPetIds(), visits.getItems()))
                     .map(addVisitsToOwner(owner))
+                    // only complete aggregates are cached, never the fallback below
+                    .doOnNext(details -> ownerDetailsCache.put(details, cacheStamp))
+                    .transform(it -> withVisitsFallback(it, () -> lastKnownVisits.fill(owner)))
             );
+    }
+
+    private Mono<OwnerDetails> loadOwnerDetailsWithoutDescriptions(final int ownerId) {
+        return customersServiceClient.getOwner(ownerId)
+            .flatMap(owner ->
+                visitsServiceClient.getVisitsForPets(owner.getPetIds(), false)
+                    .map(addVisitsToOwner(owner))
+                    .transform(it -> withVisitsFallback(it, () -> lastKnownVisits.fill(owner)))
+            );
+    }
+
+    /**
+     * Aggregates several owners with a single customers-service call and a single visits-service call
+     * for all their pets, instead of two downstream calls per owner. The owners are returned in the
+     * order of the ids, once each, and the unknown ids are skipped. More than {@value #MAX_OWNER_IDS}
+     * ids are rejected with 400.
+     */
+    @GetMapping(value = "owners", params = "ids")
+    public Flux<OwnerDetails> getOwnersDetails(final @RequestParam("ids") List<Integer> ids) {
+        List<Integer> ownerIds = ids.stream().distinct().toList();
+        if (ownerIds.size() > MAX_OWNER_IDS) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "At most " + MAX_OWNER_IDS + " owner ids are allowed"));
+        }
+        return customersServiceClient.getOwners(ownerIds)
+            .map(owners -> inOrderOf(ownerIds, owners))
+            .filter(owners -> !owners.isEmpty())
+            .flatMapMany(owners -> {
+                List<Integer> petIds = petIdsOf(owners);
+                return visitsServiceClient.getVisitsForPets(petIds)
+                    .map(visits -> {
+                        lastKnownVisits.put(petIds, visits.getItems());
+                        PetVisitsJoin.join(owners, visits.getItems());
+                        return owners;
+                    })
+                    .transform(it -> withVisitsFallback(it, () -> {
+                        owners.forEach(lastKnownVisits::fill);
+                        return owners;
+                    }))
+                    .flatMapIterable(Function.identity());
+            });
+    }
+
+    /**
+     * Runs the visits lookup through the {@code getOwnerDetails} circuit breaker, the owners being served
+     * with their last known visits when it fails or the breaker is open.
+     */
+    private <T> Mono<T> withVisitsFallback(Mono<T> visitsLookup, Supplier<T> lastKnown) {
+        ReactiveCircuitBreaker cb = cbFactory.create("getOwnerDetails");
+        return cb.run(visitsLookup, throwable -> Mono.fromSupplier(lastKnown));
+    }
 
+    private static List<OwnerDetails> inOrderOf(List<Integer> ownerIds, List<OwnerDetails> owners) {
+        Map<Integer, OwnerDetails> byId = owners.stream()
+            .collect(Collectors.toMap(OwnerDetails::getId, Function.identity(), (first, duplicate) -> first));
+        return ownerIds.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private List<Integer> petIdsOf(List<OwnerDetails> owners) {
+        return owners.stream()
+            .flatMap(owner -> owner.getPetIds().stream())
+            .collect(Collectors.toList());
     }
 
     private Function<Visits, OwnerDetails> addVisitsToOwner(OwnerDetails owner) {
         return visits -> {
-            owner.getPets()
-                .forEach(pet -> pet.getVisits()
-                    .addAll(visits.getItems().stream()
-                        .filter(v -> v.getPetId() == pet.getId())
-                        .collect(Collectors.toList()))
-                );
+            PetVisitsJoin.join(owner, visits.getItems());
             return owner;
         };
     }
-
-    private Mono<Visits> emptyVisitsForPets() {
-        return Mono.just(new Visits());
-    }
 }
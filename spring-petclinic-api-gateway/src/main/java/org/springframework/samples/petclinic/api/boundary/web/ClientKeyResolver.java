@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Identifies the client of a routed request for rate limiting: the configured client header when sent
+ * by one of the trusted proxies, the remote address otherwise. The header of any other client is
+ * ignored, it could change it on each request to get a fresh bucket.
+ */
+@Component
+@RequiredArgsConstructor
+class ClientKeyResolver implements KeyResolver {
+
+    private final ApiGatewayProperties properties;
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        ApiGatewayProperties.RateLimit rateLimit = properties.getRateLimit();
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (remoteAddress == null) {
+            return Mono.just("anonymous");
+        }
+        String address = remoteAddress.getAddress() != null
+            ? remoteAddress.getAddress().getHostAddress() : remoteAddress.getHostString();
+        if (rateLimit.getTrustedProxies().contains(address)) {
+            String client = exchange.getRequest().getHeaders().getFirst(rateLimit.getClientHeader());
+            if (StringUtils.hasText(client)) {
+                return Mono.just("client:" + client);
+            }
+        }
+        return Mono.just("ip:" + address);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.samples.petclinic.api.system.AdaptiveConcurrencyLimiter;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimitExceededException;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimiters;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Applies the adaptive concurrency limit of the target service to the {@code lb://} routes.
+ * Requests above the limit are answered with 503 without reaching the downstream service.
+ * <p>
+ * Runs after the route filters and the load balancer, so that the responses produced by the gateway
+ * itself, such as the 429 of the rate limiter, are not taken as fast downstream samples.
+ */
+@Component
+@RequiredArgsConstructor
+class ConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    private final ConcurrencyLimiters concurrencyLimiters;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null || !"lb".equals(route.getUri().getScheme())) {
+            return chain.filter(exchange);
+        }
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiters.acquire(route.getUri().getHost());
+        } catch (ConcurrencyLimitExceededException e) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+        if (permit == null) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange)
+            .doFinally(signal -> permit.release(outcome(signal, exchange.getResponse().getStatusCode())));
+    }
+
+    private static AdaptiveConcurrencyLimiter.Outcome outcome(SignalType signal, HttpStatusCode status) {
+        if (signal == SignalType.CANCEL) {
+            return AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+        }
+        if (signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError())) {
+            return AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+        }
+        return AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+}
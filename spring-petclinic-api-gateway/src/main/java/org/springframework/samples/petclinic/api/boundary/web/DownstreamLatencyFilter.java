@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.samples.petclinic.api.system.DownstreamLatencies;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the latency of the {@code lb://} routes, from the instance selected by the load balancer
+ * until the response of the downstream service is committed to the client, with its headers and the first
+ * chunk of its body, so that the time spent writing the rest of the body to a slow client is left out. Requests rejected before, by the rate or
+ * concurrency limits, are not recorded.
+ */
+@Component
+@RequiredArgsConstructor
+class DownstreamLatencyFilter implements GlobalFilter, Ordered {
+
+    private final DownstreamLatencies downstreamLatencies;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null || !"lb".equals(route.getUri().getScheme())) {
+            return chain.filter(exchange);
+        }
+        String serviceId = route.getUri().getHost();
+        long start = System.nanoTime();
+        AtomicBoolean recorded = new AtomicBoolean();
+        exchange.getResponse().beforeCommit(() -> {
+            if (recorded.compareAndSet(false, true)) {
+                downstreamLatencies.record(serviceId, DownstreamLatencies.ROUTE,
+                    DownstreamLatencies.Outcome.of(exchange.getResponse().getStatusCode()), System.nanoTime() - start);
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+            // failed before any response, the error response is committed afterwards
+            .doOnError(e -> {
+                if (recorded.compareAndSet(false, true)) {
+                    downstreamLatencies.record(serviceId, DownstreamLatencies.ROUTE,
+                        DownstreamLatencies.Outcome.of(e), System.nanoTime() - start);
+                }
+            });
+    }
+
+    @Override
+    public int getOrder() {
+        // after the ConcurrencyLimitFilter
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 2;
+    }
+}
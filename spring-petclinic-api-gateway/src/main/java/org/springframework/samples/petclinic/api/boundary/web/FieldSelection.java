@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse fieldset of an {@link OwnerDetails} response, given as dotted paths such as
+ * {@code fields=firstName,lastName,pets.name,pets.visits.date}.
+ * <p>
+ * Selecting a field selects everything below it, and the fields above it are kept to reach it.
+ * Pruning happens while serializing, through the {@code @JsonFilter} of each DTO.
+ */
+class FieldSelection {
+
+    private final Set<String> fields;
+
+    private final FilterProvider filters;
+
+    FieldSelection(List<String> fields) {
+        this.fields = fields.stream()
+            .map(String::trim)
+            .filter(field -> !field.isEmpty())
+            .collect(Collectors.toSet());
+        this.filters = new SimpleFilterProvider()
+            .addFilter("ownerDetails", new PathFilter(""))
+            .addFilter("petDetails", new PathFilter("pets."))
+            .addFilter("petType", new PathFilter("pets.type."))
+            .addFilter("visitDetails", new PathFilter("pets.visits."));
+    }
+
+    /**
+     * Whether the field, one of its parents or one of its children is selected.
+     */
+    boolean selects(String path) {
+        for (String field : fields) {
+            if (field.equals(path) || path.startsWith(field + ".") || field.startsWith(path + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    MappingJacksonValue apply(OwnerDetails owner) {
+        MappingJacksonValue value = new MappingJacksonValue(owner);
+        value.setFilters(filters);
+        return value;
+    }
+
+    private class PathFilter extends SimpleBeanPropertyFilter {
+
+        private final String prefix;
+
+        PathFilter(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected boolean include(BeanPropertyWriter writer) {
+            return selects(prefix + writer.getName());
+        }
+
+        @Override
+        protected boolean include(PropertyWriter writer) {
+            return selects(prefix + writer.getName());
+        }
+    }
+}
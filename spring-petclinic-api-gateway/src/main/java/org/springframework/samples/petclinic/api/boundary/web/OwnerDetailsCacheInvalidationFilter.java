@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Invalidates the {@link OwnerDetailsCache} when owners, pets or visits are written through the
+ * {@code customers-service} and {@code visits-service} routes.
+ * <p>
+ * Runs first so that it still sees the {@code /api/...} path, before {@code StripPrefix} applies.
+ */
+@Component
+@RequiredArgsConstructor
+class OwnerDetailsCacheInvalidationFilter implements GlobalFilter, Ordered {
+
+    private static final Set<HttpMethod> SAFE_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    private static final PathPattern PET_PATH =
+        PathPatternParser.defaultInstance.parse("/api/{service:customer|visit}/owners/{ownerId}/pets/{petId}/**");
+
+    private static final PathPattern OWNER_PATH =
+        PathPatternParser.defaultInstance.parse("/api/{service:customer|visit}/owners/{ownerId}/**");
+
+    private final OwnerDetailsCache ownerDetailsCache;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (SAFE_METHODS.contains(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        return chain.filter(exchange)
+            .doFinally(signal -> invalidate(path));
+    }
+
+    private void invalidate(PathContainer path) {
+        PathPattern.PathMatchInfo pet = PET_PATH.matchAndExtract(path);
+        if (pet != null) {
+            invalidate(pet.getUriVariables());
+            return;
+        }
+        PathPattern.PathMatchInfo owner = OWNER_PATH.matchAndExtract(path);
+        if (owner != null) {
+            invalidate(owner.getUriVariables());
+        }
+    }
+
+    private void invalidate(Map<String, String> variables) {
+        Integer ownerId = parseId(variables.get("ownerId"));
+        if (ownerId != null) {
+            ownerDetailsCache.invalidateOwner(ownerId);
+            return;
+        }
+        Integer petId = parseId(variables.get("petId"));
+        if (petId != null) {
+            ownerDetailsCache.invalidatePet(petId);
+        }
+    }
+
+    private static Integer parseId(String value) {
+        if (value == null || value.isEmpty() || value.length() > 9 || !value.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return Integer.valueOf(value);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerVersion;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.VisitMarker;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Strong entity tag of an {@link OwnerDetails} aggregate, derived from the version of the owner in
+ * customers-service and from the visit count and last visit of each pet in visits-service.
+ * <p>
+ * The same tag is computed from a loaded aggregate and from the cheap version checks, so that a
+ * conditional request can be answered without loading the aggregate.
+ */
+final class OwnerDetailsETag {
+
+    private OwnerDetailsETag() {
+    }
+
+    /**
+     * @return {@code null} when the aggregate has no version or holds last known visits
+     */
+    static String of(OwnerDetails owner) {
+        if (owner.getVersion() == null || owner.getVisitsAsOf() != null) {
+            return null;
+        }
+        StringBuilder state = new StringBuilder().append(owner.getId()).append(':').append(owner.getVersion());
+        owner.getPets().stream()
+            .filter(pet -> !pet.getVisits().isEmpty())
+            .sorted(Comparator.comparingInt(PetDetails::getId))
+            .forEach(pet -> appendPet(state, pet.getId(), pet.getVisits().size(), pet.getVisits().stream()
+                .map(VisitDetails::getId)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .max().orElse(0)));
+        return tag(state);
+    }
+
+    static String of(int ownerId, OwnerVersion version, List<VisitMarker> markers) {
+        StringBuilder state = new StringBuilder().append(ownerId).append(':').append(version.getVersion());
+        markers.stream()
+            .filter(marker -> version.getPetIds().contains(marker.getPetId()))
+            .sorted(Comparator.comparingInt(VisitMarker::getPetId))
+            .forEach(marker -> appendPet(state, marker.getPetId(), marker.getCount(), marker.getLastVisitId()));
+        return tag(state);
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header, a list of tags or {@code *}, matches the tag.
+     * Weak tags match with the weak comparison that RFC 9110 requires for {@code If-None-Match}.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || stripWeak(candidate).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static void appendPet(StringBuilder state, int petId, long visitCount, int lastVisitId) {
+        state.append(';').append(petId).append(':').append(visitCount).append(':').append(lastVisitId);
+    }
+
+    private static String tag(StringBuilder state) {
+        return '"' + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + '"';
+    }
+}
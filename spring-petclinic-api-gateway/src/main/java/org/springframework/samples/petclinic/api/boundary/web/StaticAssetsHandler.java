@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Serves the scripts, templates and stylesheets fingerprinted and precompressed at build time
+ * (see {@code org.springframework.samples.petclinic.build.StaticAssetsBuilder} in the
+ * {@code spring-petclinic-static-assets-builder} module).
+ * <p>
+ * Fingerprinted URLs ({@code scripts/app-<md5>.js}) never change and are cached for a year as immutable,
+ * while plain URLs, {@code index.html} included, are revalidated on each use with their content MD5 as ETag.
+ * The brotli or gzip variant is sent to the clients accepting it.
+ * <p>
+ * Without the {@code static-assets.properties} manifest (e.g. when run from an IDE) no route is exposed,
+ * the plain static resources route then serves the assets.
+ */
+@Slf4j
+public class StaticAssetsHandler {
+
+    private static final String MANIFEST = "static-assets.properties";
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private static final CacheControl REVALIDATE = CacheControl.noCache();
+
+    /**
+     * Assets by plain path, revalidated, and by fingerprinted path, immutable
+     */
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    public StaticAssetsHandler() throws IOException {
+        this(new ClassPathResource(MANIFEST), new ClassPathResource("static/"));
+    }
+
+    StaticAssetsHandler(Resource manifest, Resource location) throws IOException {
+        if (!manifest.exists()) {
+            log.info("No {} found, static assets are served without fingerprinting nor precompression", MANIFEST);
+            return;
+        }
+        Properties versions = PropertiesLoaderUtils.loadProperties(manifest);
+        for (String path : versions.stringPropertyNames()) {
+            String version = versions.getProperty(path);
+            Resource resource = location.createRelative(path);
+            Resource brotli = variant(resource, ".br");
+            Resource gzip = variant(resource, ".gz");
+            MediaType mediaType = MediaTypeFactory.getMediaType(resource).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            String etag = "\"" + version + "\"";
+            assets.put(path, new Asset(resource, brotli, gzip, mediaType, etag, REVALIDATE));
+            assets.put(fingerprint(path, version), new Asset(resource, brotli, gzip, mediaType, etag, IMMUTABLE));
+        }
+    }
+
+    public RouterFunction<ServerResponse> route() {
+        return RouterFunctions.route(request -> lookup(request) != null, this::handle);
+    }
+
+    private Asset lookup(ServerRequest request) {
+        HttpMethod method = request.method();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return null;
+        }
+        String path = request.path().substring(1);
+        return assets.get(path.isEmpty() ? "index.html" : path);
+    }
+
+    private Mono<ServerResponse> handle(ServerRequest request) {
+        Asset asset = lookup(request);
+        Mono<ServerResponse> notModified = request.checkNotModified(asset.getEtag())
+            .flatMap(response -> ServerResponse.from(response).cacheControl(asset.getCacheControl()).build());
+        return notModified.switchIfEmpty(Mono.defer(() -> {
+            String acceptEncoding = request.headers().firstHeader(HttpHeaders.ACCEPT_ENCODING);
+            ServerResponse.BodyBuilder response = ServerResponse.ok()
+                .contentType(asset.getMediaType())
+                .eTag(asset.getEtag())
+                .cacheControl(asset.getCacheControl())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            Resource body = asset.getResource();
+            if (asset.getBrotli() != null && accepts(acceptEncoding, "br")) {
+                response.header(HttpHeaders.CONTENT_ENCODING, "br");
+                body = asset.getBrotli();
+            }
+            else if (asset.getGzip() != null && accepts(acceptEncoding, "gzip")) {
+                response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                body = asset.getGzip();
+            }
+            return response.body(BodyInserters.fromResource(body));
+        }));
+    }
+
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(encoding)) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    static String fingerprint(String path, String version) {
+        int extension = path.lastIndexOf('.');
+        return path.substring(0, extension) + "-" + version + path.substring(extension);
+    }
+
+    private static Resource variant(Resource resource, String suffix) throws IOException {
+        Resource variant = resource.createRelative(resource.getFilename() + suffix);
+        return variant.exists() ? variant : null;
+    }
+
+    @Value
+    private static class Asset {
+
+        Resource resource;
+
+        Resource brotli;
+
+        Resource gzip;
+
+        MediaType mediaType;
+
+        String etag;
+
+        CacheControl cacheControl;
+    }
+}
@@ -15,9 +15,12 @@
  */
 package org.springframework.samples.petclinic.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,6 +30,7 @@ import static java.util.stream.Collectors.toList;
  * @author Maciej Szarlinski
  */
 @Data
+@JsonFilter("ownerDetails")
 public class OwnerDetails {
 
     private int id;
@@ -43,6 +47,18 @@ public class OwnerDetails {
 
     private final List<PetDetails> pets = new ArrayList<>();
 
+    /**
+     * Version of the owner and its pets in customers-service, absent from older instances.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer version;
+
+    /**
+     * Set when visits-service was unavailable and the visits are the last known ones, as of this date.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant visitsAsOf;
+
     @JsonIgnore
     public List<Integer> getPetIds() {
         return pets.stream()
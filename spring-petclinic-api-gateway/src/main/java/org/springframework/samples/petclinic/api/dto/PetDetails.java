@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import lombok.Data;
 
 import java.util.ArrayList;
@@ -24,6 +25,7 @@ import java.util.List;
  * @author Maciej Szarlinski
  */
 @Data
+@JsonFilter("petDetails")
 public class PetDetails {
 
     private int id;
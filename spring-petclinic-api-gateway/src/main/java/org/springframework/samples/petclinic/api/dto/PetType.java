@@ -15,12 +15,14 @@
  */
 package org.springframework.samples.petclinic.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import lombok.Data;
 
 /**
  * @author Maciej Szarlinski
  */
 @Data
+@JsonFilter("petType")
 public class PetType {
 
     private String name;
@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -22,6 +23,7 @@ import lombok.NoArgsConstructor;
  * @author Maciej Szarlinski
  */
 @Data
+@JsonFilter("visitDetails")
 @NoArgsConstructor
 public class VisitDetails {
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts itself to the latency observed on a downstream service.
+ * <p>
+ * The limit follows a gradient algorithm: each response time is compared with a long term average.
+ * When responses get slower than {@code tolerance} times that average, the limit shrinks in
+ * proportion; when they stay fast and the limit is actually used, it grows by roughly its square
+ * root. Failed or timed out requests shrink the limit multiplicatively. Requests above the limit
+ * are rejected straight away, turning the limiter into a self-sizing bulkhead.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_RTT_SMOOTHING = 2.0 / 601;
+
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final ApiGatewayProperties.ConcurrencyLimit properties;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimiter(ApiGatewayProperties.ConcurrencyLimit properties) {
+        this.properties = properties;
+        this.limit = properties.getInitialLimit();
+    }
+
+    /**
+     * @return a permit to release once the request completes, or {@code null} when the request must be shed
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        double newLimit;
+        if (dropped) {
+            newLimit = limit * properties.getBackoffRatio();
+        } else {
+            if (longRtt == 0) {
+                longRtt = rttNanos;
+            } else {
+                longRtt += (rttNanos - longRtt) * LONG_RTT_SMOOTHING;
+            }
+            // keeps the average from staying inflated once the latency went back to normal
+            if (longRtt / rttNanos > 2) {
+                longRtt *= 0.95;
+            }
+            // the limit is not the bottleneck: no evidence that it may grow
+            if (inFlightAtStart < limit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longRtt / rttNanos));
+            newLimit = limit * gradient + Math.sqrt(limit);
+            newLimit = limit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+        }
+        limit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), newLimit));
+    }
+
+    public enum Outcome {
+        /** The downstream service answered. */
+        SUCCESS,
+        /** The request failed or timed out: the downstream service is likely overloaded. */
+        DROPPED,
+        /** The caller gave up, no conclusion can be drawn. */
+        IGNORED
+    }
+
+    public class Permit {
+
+        private final long startNanos = System.nanoTime();
+
+        private final int inFlightAtStart;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release(Outcome outcome) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            if (outcome != Outcome.IGNORED) {
+                onSample(System.nanoTime() - startNanos, inFlightAtStart, outcome == Outcome.DROPPED);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typesafe gateway configuration, usually provided by the config server.
+ */
+@Data
+@ConfigurationProperties(prefix = "gateway")
+public class ApiGatewayProperties {
+
+    /**
+     * Settings of the downstream service clients, keyed by service id (e.g. {@code visits-service}).
+     * Concurrent, as the entries of the services without settings are added at request time.
+     */
+    private Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Owner details aggregate cache, a {@code max-size} of 0 disables it.
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * Last known visits of each pet, served when visits-service is unavailable. A {@code max-size} of 0 disables it.
+     */
+    private StaleVisits staleVisits = new StaleVisits();
+
+    /**
+     * Token bucket rate limit of the routes, per client.
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * HTTP/2 over cleartext to the downstream services, for the service clients and the routes.
+     */
+    private H2c h2c = new H2c();
+
+    /**
+     * Retries allowed per regular call, shared by all the service clients.
+     */
+    private RetryBudget retryBudget = new RetryBudget();
+
+    public void setClients(Map<String, Client> clients) {
+        this.clients = new ConcurrentHashMap<>(clients);
+    }
+
+    public Client client(String serviceId) {
+        return clients.computeIfAbsent(serviceId, id -> new Client());
+    }
+
+    @Data
+    public static class Cache {
+
+        private Duration ttl = Duration.ofSeconds(60);
+
+        private long maxSize = 10_000;
+    }
+
+    @Data
+    public static class StaleVisits {
+
+        private Duration ttl = Duration.ofHours(24);
+
+        /**
+         * Maximum number of pets whose visits are kept.
+         */
+        private long maxSize = 100_000;
+    }
+
+    /**
+     * Requests are sent with prior knowledge, every downstream service must accept h2c once enabled.
+     */
+    @Data
+    public static class H2c {
+
+        private boolean enabled = false;
+
+        /**
+         * Streams multiplexed on a connection of a service client before another connection is opened,
+         * bounded by the limit advertised by the service.
+         */
+        private long maxConcurrentStreams = 100;
+    }
+
+    @Data
+    public static class RetryBudget {
+
+        /**
+         * Retries allowed per regular call, 0.1 adds at most 10% load.
+         */
+        private double ratio = 0.1;
+
+        /**
+         * Maximum number of retries that may be saved up, the budget starts full.
+         */
+        private double maxBudget = 10;
+    }
+
+    @Data
+    public static class RateLimit {
+
+        /**
+         * Off by default, clients behind a shared NAT or proxy address share a bucket unless a trusted
+         * proxy sends the client header.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Header identifying the client, only honoured on the requests of a trusted proxy. The remote
+         * address is used otherwise, as a client could send a new value on each request to get a new bucket.
+         */
+        private String clientHeader = "X-Client-Id";
+
+        /**
+         * Addresses of the proxies that set the client header, e.g. {@code 10.0.0.5}. None by default, the
+         * header is then ignored.
+         */
+        private Set<String> trustedProxies = new HashSet<>();
+
+        /**
+         * Maximum number of client buckets kept, the least recently used ones are dropped first.
+         */
+        private long maxClients = 100_000;
+
+        /**
+         * Limit of the routes without their own entry in {@code routes}.
+         */
+        private Limit defaults = new Limit();
+
+        /**
+         * Limits keyed by route id (e.g. {@code customers-service}).
+         */
+        private Map<String, Limit> routes = new HashMap<>();
+
+        public Limit route(String routeId) {
+            return routes.getOrDefault(routeId, defaults);
+        }
+    }
+
+    @Data
+    public static class Limit {
+
+        /**
+         * Tokens added to the bucket per second, i.e. the sustained request rate.
+         */
+        private int replenishRate = 50;
+
+        /**
+         * Size of the bucket, i.e. the largest burst of requests allowed.
+         */
+        private int burstCapacity = 100;
+    }
+
+    @Data
+    public static class Client {
+
+        private Pool pool = new Pool();
+
+        private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+        private Hedging hedging = new Hedging();
+
+        private Slo slo = new Slo();
+
+        private Retry retry = new Retry();
+
+        private Batch batch = new Batch();
+    }
+
+    /**
+     * Lookups of the service client by a list of ids.
+     */
+    @Data
+    public static class Batch {
+
+        /**
+         * Ids per call, longer lists are split and their chunks are sent in the body of search calls.
+         */
+        private int chunkSize = 200;
+
+        /**
+         * Chunks of a lookup sent concurrently.
+         */
+        private int concurrency = 4;
+    }
+
+    /**
+     * Retries of the idempotent lookups of the service client after a connection failure, within the
+     * {@link RetryBudget retry budget}.
+     */
+    @Data
+    public static class Retry {
+
+        private boolean enabled = true;
+
+        /**
+         * Calls sent at most, including the first one.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Backoff before the first retry, doubled for each following one.
+         */
+        private Duration minBackoff = Duration.ofMillis(20);
+
+        private Duration maxBackoff = Duration.ofMillis(200);
+
+        /**
+         * Share of the backoff drawn at random, 0.5 waits between half and the whole backoff.
+         */
+        private double jitter = 0.5;
+    }
+
+    /**
+     * Latency objective of the calls to a downstream service, see {@link DownstreamLatencies}.
+     */
+    @Data
+    public static class Slo {
+
+        /**
+         * Histogram buckets published in addition to the percentile histogram, the {@code latency} is always one of them.
+         */
+        private List<Duration> buckets = new ArrayList<>(List.of(Duration.ofMillis(25), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1)));
+
+        /**
+         * Calls slower than this consume the error budget, like the failed ones.
+         */
+        private Duration latency = Duration.ofMillis(250);
+
+        /**
+         * Share of good calls, 0.999 leaves an error budget of 0.1% of the calls.
+         */
+        private double objective = 0.999;
+
+        /**
+         * Rolling window the burn rate is computed over.
+         */
+        private Duration window = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Hedged requests, only used by the idempotent lookups of the service client.
+     */
+    @Data
+    public static class Hedging {
+
+        private boolean enabled = false;
+
+        /**
+         * Percentile of the recent latencies after which the hedge is sent.
+         */
+        private double percentile = 0.95;
+
+        /**
+         * Lower bound of the hedge delay, so that a fast service is not hedged on jitter.
+         */
+        private Duration minDelay = Duration.ofMillis(10);
+
+        /**
+         * Number of recent latencies the percentile is computed from.
+         */
+        private int windowSize = 1000;
+
+        /**
+         * Hedges allowed per regular request, 0.1 adds at most 10% load.
+         */
+        private double budgetRatio = 0.1;
+
+        /**
+         * Maximum number of hedges that may be saved up during quiet periods.
+         */
+        private double maxBudget = 10;
+    }
+
+    /**
+     * Adaptive limit of the concurrent requests sent to a downstream service, shared by its
+     * gateway route and its service client.
+     */
+    @Data
+    public static class ConcurrencyLimit {
+
+        /**
+         * Off by default, once on the requests above the limit are shed with a 503 from the start, the limit
+         * growing from the initial limit with the observed latencies.
+         */
+        private boolean enabled = false;
+
+        private int initialLimit = 20;
+
+        private int minLimit = 2;
+
+        private int maxLimit = 200;
+
+        /**
+         * Latency increase over the long term average that is tolerated before the limit shrinks.
+         */
+        private double tolerance = 2.0;
+
+        /**
+         * Multiplicative decrease applied when a request fails or times out.
+         */
+        private double backoffRatio = 0.9;
+    }
+
+    @Data
+    public static class Pool {
+
+        private int maxConnections = 100;
+
+        private int pendingAcquireMaxCount = 500;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        private boolean keepAlive = true;
+    }
+}
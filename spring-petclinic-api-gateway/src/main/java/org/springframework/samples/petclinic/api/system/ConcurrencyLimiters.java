@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link AdaptiveConcurrencyLimiter} per downstream service, shared by the gateway route and
+ * the service client of that service.
+ * <p>
+ * Publishes {@code gateway.concurrency.limit}, {@code gateway.concurrency.inflight} and
+ * {@code gateway.concurrency.rejected}, tagged by {@code service}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimiters {
+
+    private final ApiGatewayProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    /**
+     * @return a permit to release once the request completes, {@code null} when limiting is disabled
+     * @throws ConcurrencyLimitExceededException when the request must be shed
+     */
+    public AdaptiveConcurrencyLimiter.Permit acquire(String serviceId) {
+        ApiGatewayProperties.ConcurrencyLimit config = properties.client(serviceId).getConcurrencyLimit();
+        if (!config.isEnabled()) {
+            return null;
+        }
+        AdaptiveConcurrencyLimiter.Permit permit = limiters.computeIfAbsent(serviceId, id -> register(id, config)).tryAcquire();
+        if (permit == null) {
+            rejections.get(serviceId).increment();
+            throw new ConcurrencyLimitExceededException(serviceId);
+        }
+        return permit;
+    }
+
+    private AdaptiveConcurrencyLimiter register(String serviceId, ApiGatewayProperties.ConcurrencyLimit config) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config);
+        Gauge.builder("gateway.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .description("Current adaptive concurrency limit")
+            .tag("service", serviceId)
+            .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .description("Requests currently holding a permit")
+            .tag("service", serviceId)
+            .register(meterRegistry);
+        rejections.put(serviceId, Counter.builder("gateway.concurrency.rejected")
+            .description("Requests shed because the concurrency limit was reached")
+            .tag("service", serviceId)
+            .register(meterRegistry));
+        return limiter;
+    }
+}
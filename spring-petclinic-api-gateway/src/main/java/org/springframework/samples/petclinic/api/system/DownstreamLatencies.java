@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Latency of the calls sent to the downstream services, by the gateway routes as well as by the
+ * service clients, against the {@link ApiGatewayProperties.Slo latency objective} of each service.
+ * <p>
+ * Publishes the {@code gateway.downstream.latency} percentile histogram, with the SLO buckets, tagged by
+ * {@code service}, {@code caller} (route or client) and {@code outcome}, and the
+ * {@code gateway.slo.burn.rate} gauge tagged by {@code service}. A call is bad when it fails, times out,
+ * answers with a 5xx or answers slower than the objective latency. Requests shed by the concurrency
+ * limit never reach the service and are not recorded.
+ */
+@Component
+@RequiredArgsConstructor
+public class DownstreamLatencies {
+
+    public static final String ROUTE = "route";
+
+    public static final String CLIENT = "client";
+
+    private final ApiGatewayProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<String, ErrorBudget> errorBudgets = new ConcurrentHashMap<>();
+
+    public enum Outcome {
+        SUCCESS, CLIENT_ERROR, SERVER_ERROR, TIMEOUT, ERROR;
+
+        public static Outcome of(HttpStatusCode status) {
+            if (status == null || status.is5xxServerError()) {
+                return SERVER_ERROR;
+            }
+            return status.is4xxClientError() ? CLIENT_ERROR : SUCCESS;
+        }
+
+        public static Outcome of(Throwable error) {
+            return error instanceof TimeoutException || error.getCause() instanceof TimeoutException ? TIMEOUT : ERROR;
+        }
+
+        private String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    public void record(String serviceId, String caller, Outcome outcome, long nanos) {
+        ApiGatewayProperties.Slo slo = properties.client(serviceId).getSlo();
+        timers.computeIfAbsent(serviceId + '/' + caller + '/' + outcome, key -> timer(serviceId, caller, outcome, slo))
+            .record(nanos, TimeUnit.NANOSECONDS);
+        boolean good = (outcome == Outcome.SUCCESS || outcome == Outcome.CLIENT_ERROR) && nanos <= slo.getLatency().toNanos();
+        errorBudgets.computeIfAbsent(serviceId, id -> errorBudget(id, slo)).record(good, System.nanoTime());
+    }
+
+    private Timer timer(String serviceId, String caller, Outcome outcome, ApiGatewayProperties.Slo slo) {
+        return Timer.builder("gateway.downstream.latency")
+            .description("Latency of the calls to a downstream service, until the response starts, the rest of the body excluded")
+            .tag("service", serviceId)
+            .tag("caller", caller)
+            .tag("outcome", outcome.tag())
+            .publishPercentileHistogram()
+            .serviceLevelObjectives(Stream.concat(slo.getBuckets().stream(), Stream.of(slo.getLatency()))
+                .distinct()
+                .toArray(Duration[]::new))
+            .register(meterRegistry);
+    }
+
+    private ErrorBudget errorBudget(String serviceId, ApiGatewayProperties.Slo slo) {
+        ErrorBudget errorBudget = new ErrorBudget(slo.getObjective(), slo.getWindow());
+        Gauge.builder("gateway.slo.burn.rate", errorBudget, budget -> budget.burnRate(System.nanoTime()))
+            .description("Share of bad calls over the rolling window divided by the error budget")
+            .tag("service", serviceId)
+            .register(meterRegistry);
+        return errorBudget;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+
+/**
+ * Rolling count of the good and bad calls to a service, split in time slices so that old calls leave
+ * the window without keeping each of them.
+ * <p>
+ * The burn rate is the share of bad calls divided by the error budget of the objective: at 1 the
+ * budget is spent exactly at the end of the objective period, at 10 it is spent ten times faster.
+ */
+class ErrorBudget {
+
+    private static final int SLICES = 10;
+
+    private final double budget;
+
+    private final long sliceNanos;
+
+    private final Slice[] slices = new Slice[SLICES];
+
+    ErrorBudget(double objective, Duration window) {
+        this.budget = 1 - objective;
+        this.sliceNanos = Math.max(1, window.toNanos() / SLICES);
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    void record(boolean good, long now) {
+        long index = Math.floorDiv(now, sliceNanos);
+        slices[(int) Math.floorMod(index, SLICES)].add(index, good);
+    }
+
+    double burnRate(long now) {
+        long oldest = Math.floorDiv(now, sliceNanos) - SLICES + 1;
+        long total = 0;
+        long bad = 0;
+        for (Slice slice : slices) {
+            synchronized (slice) {
+                if (slice.index >= oldest) {
+                    total += slice.good + slice.bad;
+                    bad += slice.bad;
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) bad / total / budget;
+    }
+
+    private static class Slice {
+
+        private long index = Long.MIN_VALUE;
+
+        private long good;
+
+        private long bad;
+
+        synchronized void add(long index, boolean good) {
+            if (this.index != index) {
+                this.index = index;
+                this.good = 0;
+                this.bad = 0;
+            }
+            if (good) {
+                this.good++;
+            } else {
+                this.bad++;
+            }
+        }
+    }
+}
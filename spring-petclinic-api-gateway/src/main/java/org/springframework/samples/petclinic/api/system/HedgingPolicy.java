@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests: when a call has not answered within the configured percentile of the recent
+ * latencies, the same call is sent a second time and the first answer wins, the other one being
+ * cancelled.
+ * <p>
+ * Calls go through the round robin load balancer, so the hedge usually reaches another instance of the
+ * service, but concurrent callers may still route it to the instance of the primary call. Calls to a
+ * service with fewer than two registered instances are never hedged: the hedge could only add to the
+ * load of the slow instance. Hedges are capped by a {@link RequestBudget} so that they cannot double
+ * the load of a struggling service. Only idempotent calls may be hedged.
+ * <p>
+ * The hedging delay is computed from the latencies of every call that answered, hedge or not. A primary
+ * call beaten by its hedge is recorded with the time it had taken when cancelled, a lower bound of its
+ * latency, so that the slow calls are not left out of the percentile and the delay does not drift downward.
+ * <p>
+ * Publishes {@code gateway.hedges.fired}, {@code gateway.hedges.won} and {@code gateway.hedges.skipped}
+ * tagged by {@code service}.
+ */
+public class HedgingPolicy {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private static final int REFRESH_INTERVAL = 50;
+
+    private static final String SETTLED = HedgingPolicy.class.getName() + ".SETTLED";
+
+    private final ApiGatewayProperties.Hedging properties;
+
+    private final IntSupplier instances;
+
+    private final RequestBudget budget;
+
+    private final long[] latencies;
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private volatile long delayNanos = -1;
+
+    private final Counter fired;
+
+    private final Counter won;
+
+    private final Counter skipped;
+
+    public HedgingPolicy(String serviceId, ApiGatewayProperties.Hedging properties, IntSupplier instances,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.instances = instances;
+        this.budget = new RequestBudget(properties.getBudgetRatio(), properties.getMaxBudget());
+        this.latencies = new long[properties.getWindowSize()];
+        this.fired = counter("gateway.hedges.fired", "Hedged requests sent", serviceId, meterRegistry);
+        this.won = counter("gateway.hedges.won", "Hedged requests that answered first", serviceId, meterRegistry);
+        this.skipped = counter("gateway.hedges.skipped", "Hedged requests not sent because the budget was exhausted",
+            serviceId, meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        return Mono.defer(() -> {
+            budget.deposit();
+            long delay = delayNanos;
+            if (delay < 0 || instances.getAsInt() < 2) {
+                return timed(call);
+            }
+            AtomicBoolean settled = new AtomicBoolean();
+            Mono<T> primary = timed(call, settled).doOnEach(signal -> settled.set(true));
+            Mono<T> hedge = Mono.delay(Duration.ofNanos(delay))
+                .then(Mono.defer(() -> {
+                    if (!budget.tryWithdraw()) {
+                        skipped.increment();
+                        return Mono.<T>never();
+                    }
+                    fired.increment();
+                    return timed(call)
+                        .doOnEach(signal -> settled.set(true))
+                        .doOnNext(value -> won.increment());
+                }))
+                // a failing hedge must not hide the answer of the primary call
+                .onErrorResume(e -> Mono.never());
+            return Mono.firstWithSignal(primary, hedge)
+                .contextWrite(context -> context.put(SETTLED, settled));
+        });
+    }
+
+    /**
+     * Whether a call cancelled with this context lost a hedging race, rather than being timed out.
+     */
+    static boolean isSettled(ContextView context) {
+        return context.<AtomicBoolean>getOrEmpty(SETTLED).map(AtomicBoolean::get).orElse(false);
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> call) {
+        return timed(call, new AtomicBoolean());
+    }
+
+    /**
+     * Records the latency of the call once it answers, or when it is cancelled after the race has been
+     * settled by the other call.
+     */
+    private <T> Mono<T> timed(Supplier<Mono<T>> call, AtomicBoolean settled) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get()
+                .doOnSuccess(value -> record(System.nanoTime() - start))
+                .doOnCancel(() -> {
+                    if (settled.get()) {
+                        record(System.nanoTime() - start);
+                    }
+                });
+        });
+    }
+
+    void record(long latencyNanos) {
+        long sample = samples.getAndIncrement();
+        latencies[(int) (sample % latencies.length)] = latencyNanos;
+        if (sample + 1 >= MIN_SAMPLES && sample % REFRESH_INTERVAL == 0) {
+            refreshDelay(sample + 1);
+        }
+    }
+
+    private void refreshDelay(long sampleCount) {
+        long[] window = Arrays.copyOf(latencies, (int) Math.min(sampleCount, latencies.length));
+        Arrays.sort(window);
+        long percentile = window[(int) Math.min(window.length - 1, Math.ceil(properties.getPercentile() * window.length))];
+        delayNanos = Math.max(properties.getMinDelay().toNanos(), percentile);
+    }
+
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    long getSampleCount() {
+        return samples.get();
+    }
+
+    private static Counter counter(String name, String description, String serviceId, MeterRegistry meterRegistry) {
+        return Counter.builder(name)
+            .description(description)
+            .tag("service", serviceId)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+/**
+ * Caps extra requests (hedges, retries) to a ratio of the regular requests.
+ * <p>
+ * Every regular request deposits {@code ratio} token and every extra request withdraws a whole
+ * one, so with a ratio of 0.1 at most one extra request is sent for ten regular ones. The balance
+ * is capped to absorb short bursts without allowing a storm after a long quiet period.
+ */
+public class RequestBudget {
+
+    private final double ratio;
+
+    private final double maxTokens;
+
+    private double tokens;
+
+    public RequestBudget(double ratio, double maxTokens) {
+        this(ratio, maxTokens, 0);
+    }
+
+    public RequestBudget(double ratio, double maxTokens, double initialTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = Math.min(maxTokens, initialTokens);
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
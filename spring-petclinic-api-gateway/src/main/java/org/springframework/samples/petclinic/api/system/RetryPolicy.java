@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries of a call failing before any response, such as a connection reset or refused, so that
+ * the circuit breaker only sees the failures that last.
+ * <p>
+ * Each retry waits for an exponential backoff with jitter and goes through the round robin load
+ * balancer again, so it is sent to the next instance of the service. Retries of all the services
+ * withdraw from a single {@link RequestBudget}, a failing service cannot turn its retries into a
+ * storm. Only idempotent calls may be retried.
+ * <p>
+ * Publishes {@code gateway.retries.sent} and {@code gateway.retries.skipped} tagged by {@code service}.
+ */
+public class RetryPolicy {
+
+    private final ApiGatewayProperties.Retry properties;
+
+    private final RequestBudget budget;
+
+    private final Counter sent;
+
+    private final Counter skipped;
+
+    public RetryPolicy(String serviceId, ApiGatewayProperties.Retry properties, RequestBudget budget, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.budget = budget;
+        this.sent = Counter.builder("gateway.retries.sent")
+            .description("Retries sent after a connection failure")
+            .tag("service", serviceId)
+            .register(meterRegistry);
+        this.skipped = Counter.builder("gateway.retries.skipped")
+            .description("Retries not sent because the retry budget was exhausted")
+            .tag("service", serviceId)
+            .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        return Mono.defer(() -> {
+            budget.deposit();
+            return Mono.defer(call).retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                Throwable failure = signal.failure();
+                if (!isTransient(failure) || signal.totalRetries() + 1 >= properties.getMaxAttempts()) {
+                    return Mono.error(failure);
+                }
+                if (!budget.tryWithdraw()) {
+                    skipped.increment();
+                    return Mono.error(failure);
+                }
+                sent.increment();
+                return Mono.delay(backoff(signal.totalRetries()));
+            })));
+        });
+    }
+
+    Duration backoff(long retry) {
+        long min = properties.getMinBackoff().toNanos();
+        long backoff = Math.min(properties.getMaxBackoff().toNanos(), min << Math.min(retry, 30));
+        double jitter = properties.getJitter() * ThreadLocalRandom.current().nextDouble();
+        return Duration.ofNanos((long) (backoff * (1 - jitter)));
+    }
+
+    /**
+     * Whether the call failed on the connection rather than with a response of the service.
+     */
+    static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientRequestException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory token bucket {@link RateLimiter} used by the {@code RequestRateLimiter} filter of the routes,
+ * with one bucket per route and client.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the instant at which it will be full again, so taking a
+ * token is a compare-and-set without any lock. Limits are read from {@link ApiGatewayProperties.RateLimit}
+ * on every request and follow configuration refreshes. Responses carry the same {@code X-RateLimit-*}
+ * headers as the Redis rate limiter.
+ * <p>
+ * Publishes {@code gateway.ratelimit.requests} tagged by {@code route} and {@code outcome} (allowed or
+ * rejected) and the {@code gateway.ratelimit.buckets} gauge.
+ */
+@Component
+public class TokenBucketRateLimiter implements RateLimiter<ApiGatewayProperties.Limit> {
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ApiGatewayProperties.RateLimit properties;
+
+    private final Cache<String, AtomicLong> buckets;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> allowed = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    public TokenBucketRateLimiter(ApiGatewayProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties.getRateLimit();
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(this.properties.getMaxClients())
+            // an idle bucket is full again, dropping it changes nothing
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+        meterRegistry.gauge("gateway.ratelimit.buckets", buckets, Cache::estimatedSize);
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        if (!properties.isEnabled()) {
+            return Mono.just(new Response(true, Map.of()));
+        }
+        ApiGatewayProperties.Limit limit = properties.route(routeId);
+        AtomicLong bucket = buckets.get(routeId + ':' + id, key -> new AtomicLong(Long.MIN_VALUE));
+        long remaining = tryConsume(bucket, limit, System.nanoTime());
+        counter(remaining < 0 ? rejected : allowed, routeId, remaining < 0 ? "rejected" : "allowed").increment();
+        return Mono.just(new Response(remaining >= 0, Map.of(
+            REMAINING_HEADER, String.valueOf(Math.max(remaining, 0)),
+            REPLENISH_RATE_HEADER, String.valueOf(limit.getReplenishRate()),
+            BURST_CAPACITY_HEADER, String.valueOf(limit.getBurstCapacity()),
+            REQUESTED_TOKENS_HEADER, "1")));
+    }
+
+    /**
+     * @return the tokens left after taking one, or -1 when the bucket is empty
+     */
+    static long tryConsume(AtomicLong bucket, ApiGatewayProperties.Limit limit, long now) {
+        long interval = SECOND / Math.max(1, limit.getReplenishRate());
+        long capacity = interval * Math.max(1, limit.getBurstCapacity());
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + interval;
+            if (next - now > capacity) {
+                return -1;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return (capacity - (next - now)) / interval;
+            }
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String routeId, String outcome) {
+        return counters.computeIfAbsent(routeId, route -> Counter.builder("gateway.ratelimit.requests")
+            .description("Requests checked against the rate limit of a route")
+            .tag("route", route)
+            .tag("outcome", outcome)
+            .register(meterRegistry));
+    }
+
+    @Override
+    public Map<String, ApiGatewayProperties.Limit> getConfig() {
+        return properties.getRoutes();
+    }
+
+    @Override
+    public Class<ApiGatewayProperties.Limit> getConfigClass() {
+        return ApiGatewayProperties.Limit.class;
+    }
+
+    @Override
+    public ApiGatewayProperties.Limit newConfig() {
+        return new ApiGatewayProperties.Limit();
+    }
+}
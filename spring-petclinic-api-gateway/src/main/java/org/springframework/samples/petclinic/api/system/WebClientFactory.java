@@ -0,0 +1,168 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Builds one load-balanced {@link WebClient} per downstream service, each backed by its own
+ * Reactor Netty connection pool sized from {@link ApiGatewayProperties}.
+ * <p>
+ * Pool metrics (active, idle and pending connections, acquire time) are published under
+ * {@code reactor.netty.connection.provider.*} with the service id as {@code name} tag.
+ * In {@link ApiGatewayProperties.H2c h2c} mode the requests are multiplexed over fewer connections,
+ * the multiplexed connections and their active and pending streams are tagged {@code http2.<service id>}.
+ * Calls are subject to the {@link ConcurrencyLimiters adaptive concurrency limit} of the service,
+ * idempotent lookups may additionally be hedged with the service {@link #hedgingPolicy(String) hedging policy}
+ * and retried after a connection failure with its {@link #retryPolicy(String) retry policy}.
+ * The calls that pass the limit are recorded by {@link DownstreamLatencies}.
+ * <p>
+ * Responses are requested as {@link #APPLICATION_SMILE Smile}, cheaper to parse than JSON, services
+ * without Smile support answer with JSON.
+ */
+@Component
+@RequiredArgsConstructor
+public class WebClientFactory implements DisposableBean {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private static final List<MediaType> ACCEPT = List.of(APPLICATION_SMILE, MediaType.valueOf("application/json;q=0.9"));
+
+    private final WebClient.Builder webClientBuilder;
+
+    private final ApiGatewayProperties properties;
+
+    private final ConcurrencyLimiters concurrencyLimiters;
+
+    private final DownstreamLatencies downstreamLatencies;
+
+    private final RequestBudget retryBudget;
+
+    private final MeterRegistry meterRegistry;
+
+    private final DiscoveryClient discoveryClient;
+
+    private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+    public WebClient create(String serviceId) {
+        ApiGatewayProperties.Pool pool = properties.client(serviceId).getPool();
+        ApiGatewayProperties.H2c h2c = properties.getH2c();
+        ConnectionProvider.Builder connectionProviderBuilder = ConnectionProvider.builder(serviceId)
+            .maxConnections(pool.getMaxConnections())
+            .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+            .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+            .maxIdleTime(pool.getMaxIdleTime())
+            .maxLifeTime(pool.getMaxLifeTime())
+            .evictInBackground(pool.getEvictionInterval())
+            .metrics(true);
+        if (h2c.isEnabled()) {
+            connectionProviderBuilder.allocationStrategy(Http2AllocationStrategy.builder()
+                .maxConnections(pool.getMaxConnections())
+                .maxConcurrentStreams(h2c.getMaxConcurrentStreams())
+                .build());
+        }
+        ConnectionProvider connectionProvider = connectionProviderBuilder.build();
+        connectionProviders.add(connectionProvider);
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+            .option(ChannelOption.SO_KEEPALIVE, pool.isKeepAlive())
+            .keepAlive(pool.isKeepAlive())
+            .protocol(h2c.isEnabled() ? HttpProtocol.H2C : HttpProtocol.HTTP11);
+
+        return webClientBuilder.clone()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .defaultHeaders(headers -> headers.setAccept(ACCEPT))
+            .filter(concurrencyLimit(serviceId))
+            .filter(recordLatency(serviceId))
+            .build();
+    }
+
+    public HedgingPolicy hedgingPolicy(String serviceId) {
+        return new HedgingPolicy(serviceId, properties.client(serviceId).getHedging(),
+            () -> discoveryClient.getInstances(serviceId).size(), meterRegistry);
+    }
+
+    public RetryPolicy retryPolicy(String serviceId) {
+        return new RetryPolicy(serviceId, properties.client(serviceId).getRetry(), retryBudget, meterRegistry);
+    }
+
+    public ApiGatewayProperties.Batch batch(String serviceId) {
+        return properties.client(serviceId).getBatch();
+    }
+
+    private ExchangeFilterFunction concurrencyLimit(String serviceId) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiters.acquire(serviceId);
+            if (permit == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(request)
+                .doOnSuccess(response -> permit.release(response != null && response.statusCode().is5xxServerError()
+                    ? AdaptiveConcurrencyLimiter.Outcome.DROPPED : AdaptiveConcurrencyLimiter.Outcome.SUCCESS))
+                .doOnError(e -> permit.release(AdaptiveConcurrencyLimiter.Outcome.DROPPED))
+                // cancellations come from the circuit breaker time limiter, or from a lost hedging race
+                .doOnCancel(() -> permit.release(HedgingPolicy.isSettled(context)
+                    ? AdaptiveConcurrencyLimiter.Outcome.IGNORED : AdaptiveConcurrencyLimiter.Outcome.DROPPED));
+        });
+    }
+
+    private ExchangeFilterFunction recordLatency(String serviceId) {
+        return (request, next) -> Mono.deferContextual(context -> {
+            long start = System.nanoTime();
+            // the exchange may still be cancelled once the response is received
+            AtomicBoolean recorded = new AtomicBoolean();
+            Consumer<DownstreamLatencies.Outcome> record = outcome -> {
+                if (recorded.compareAndSet(false, true)) {
+                    downstreamLatencies.record(serviceId, DownstreamLatencies.CLIENT, outcome, System.nanoTime() - start);
+                }
+            };
+            return next.exchange(request)
+                .doOnSuccess(response -> record.accept(DownstreamLatencies.Outcome.of(response != null ? response.statusCode() : null)))
+                .doOnError(e -> record.accept(DownstreamLatencies.Outcome.of(e)))
+                // the loser of a hedging race is not a timeout
+                .doOnCancel(() -> {
+                    if (!HedgingPolicy.isSettled(context)) {
+                        record.accept(DownstreamLatencies.Outcome.TIMEOUT);
+                    }
+                });
+        });
+    }
+
+    @Override
+    public void destroy() {
+        connectionProviders.forEach(ConnectionProvider::dispose);
+    }
+}
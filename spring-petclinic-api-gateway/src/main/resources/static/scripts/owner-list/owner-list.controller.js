@@ -4,7 +4,32 @@ angular.module('ownerList')
     .controller('OwnerListController', ['$http', function ($http) {
         var self = this;
 
-        $http.get('api/customer/owners').then(function (resp) {
-            self.owners = resp.data;
-        });
+        // customers-service filters on the last name and returns a page at a time
+        self.search = function () {
+            self.owners = [];
+            self.next = null;
+            load();
+        };
+
+        self.loadMore = function () {
+            load(self.next);
+        };
+
+        function load(after) {
+            var query = self.query || '';
+            var params = {lastName: query, size: 20};
+            if (after) {
+                params.after = after;
+            }
+            $http.get('api/customer/owners', {params: params}).then(function (resp) {
+                // a response to an older search
+                if (query !== (self.query || '')) {
+                    return;
+                }
+                self.owners = self.owners.concat(resp.data.items);
+                self.next = resp.data.next;
+            });
+        }
+
+        self.search();
     }]);
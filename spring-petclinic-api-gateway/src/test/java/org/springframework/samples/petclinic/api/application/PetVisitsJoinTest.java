@@ -0,0 +1,62 @@
+package org.springframework.samples.petclinic.api.application;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PetVisitsJoinTest {
+
+    @Test
+    void visitsAreDistributedToTheirPetsInOrder() {
+        OwnerDetails owner = new OwnerDetails();
+        for (int petId = 1; petId <= 100; petId++) {
+            owner.getPets().add(pet(petId));
+        }
+        List<VisitDetails> visits = new ArrayList<>();
+        for (int visitId = 0; visitId < 1000; visitId++) {
+            visits.add(visit(visitId, visitId % 100 + 1));
+        }
+
+        PetVisitsJoin.join(owner, visits);
+
+        for (PetDetails pet : owner.getPets()) {
+            assertThat(pet.getVisits()).hasSize(10);
+            assertThat(pet.getVisits()).allMatch(visit -> visit.getPetId() == pet.getId());
+            assertThat(pet.getVisits()).isSortedAccordingTo((a, b) -> a.getId() - b.getId());
+        }
+    }
+
+    @Test
+    void visitsAreDistributedAcrossOwners() {
+        OwnerDetails george = new OwnerDetails();
+        george.getPets().add(pet(7));
+        OwnerDetails betty = new OwnerDetails();
+        betty.getPets().add(pet(1_000_007));
+
+        PetVisitsJoin.join(Arrays.asList(george, betty),
+            Arrays.asList(visit(1, 1_000_007), visit(2, 7), visit(3, 42), visit(4, null)));
+
+        assertThat(george.getPets().get(0).getVisits()).extracting(VisitDetails::getId).containsExactly(2);
+        assertThat(betty.getPets().get(0).getVisits()).extracting(VisitDetails::getId).containsExactly(1);
+    }
+
+    private static PetDetails pet(int id) {
+        PetDetails pet = new PetDetails();
+        pet.setId(id);
+        return pet;
+    }
+
+    private static VisitDetails visit(int id, Integer petId) {
+        VisitDetails visit = new VisitDetails();
+        visit.setId(id);
+        visit.setPetId(petId);
+        return visit;
+    }
+}
@@ -0,0 +1,79 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>("test", meterRegistry);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentRequestsShareOneLoad() {
+        Sinks.One<String> downstream = Sinks.one();
+        AtomicReference<String> first = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+
+        coalescer.execute(1, () -> load(downstream)).subscribe(first::set);
+        coalescer.execute(1, () -> load(downstream)).subscribe(second::set);
+        downstream.tryEmitValue("George");
+
+        assertThat(loads).hasValue(1);
+        assertThat(first).hasValue("George");
+        assertThat(second).hasValue("George");
+        assertThat(meterRegistry.counter("gateway.requests.coalesced", "name", "test").count()).isEqualTo(1);
+    }
+
+    @Test
+    void errorIsFannedOutAndKeyReleased() {
+        Sinks.One<String> downstream = Sinks.one();
+        AtomicReference<Throwable> first = new AtomicReference<>();
+        AtomicReference<Throwable> second = new AtomicReference<>();
+
+        coalescer.execute(1, () -> load(downstream)).subscribe(v -> { }, first::set);
+        coalescer.execute(1, () -> load(downstream)).subscribe(v -> { }, second::set);
+        downstream.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(first.get()).hasMessage("boom");
+        assertThat(second.get()).hasMessage("boom");
+
+        assertThat(coalescer.execute(1, () -> Mono.just("Betty")).block()).isEqualTo("Betty");
+    }
+
+    @Test
+    void loadIsCancelledOnlyWhenLastSubscriberLeaves() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Sinks.One<String> downstream = Sinks.one();
+        Mono<String> source = load(downstream).doOnCancel(() -> cancelled.set(true));
+        AtomicReference<String> remaining = new AtomicReference<>();
+
+        Disposable first = coalescer.execute(1, () -> source).subscribe();
+        Disposable second = coalescer.execute(1, () -> source).subscribe(remaining::set);
+
+        first.dispose();
+        assertThat(cancelled).isFalse();
+
+        second.dispose();
+        assertThat(cancelled).isTrue();
+
+        coalescer.execute(1, () -> Mono.just("Betty")).subscribe(remaining::set);
+        assertThat(remaining).hasValue("Betty");
+        assertThat(loads).hasValue(1);
+    }
+
+    private Mono<String> load(Sinks.One<String> downstream) {
+        return downstream.asMono().doOnSubscribe(subscription -> loads.incrementAndGet());
+    }
+}
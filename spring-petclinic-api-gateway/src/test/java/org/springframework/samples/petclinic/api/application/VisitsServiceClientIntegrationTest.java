@@ -1,20 +1,40 @@
 package org.springframework.samples.petclinic.api.application;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Protocol;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.discovery.simple.SimpleDiscoveryClient;
+import org.springframework.cloud.client.discovery.simple.SimpleDiscoveryProperties;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.ConcurrencyLimiters;
+import org.springframework.samples.petclinic.api.system.DownstreamLatencies;
+import org.springframework.samples.petclinic.api.system.RequestBudget;
+import org.springframework.samples.petclinic.api.system.WebClientFactory;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class VisitsServiceClientIntegrationTest {
 
@@ -24,15 +44,27 @@ class VisitsServiceClientIntegrationTest {
 
     private MockWebServer server;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApiGatewayProperties properties;
+
+    private WebClientFactory webClientFactory;
+
     @BeforeEach
     void setUp() {
         server = new MockWebServer();
-        visitsServiceClient = new VisitsServiceClient(WebClient.builder());
+        properties = new ApiGatewayProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        webClientFactory = new WebClientFactory(WebClient.builder(), properties,
+            new ConcurrencyLimiters(properties, meterRegistry), new DownstreamLatencies(properties, meterRegistry), new RequestBudget(0.1, 10, 10), meterRegistry,
+            new SimpleDiscoveryClient(new SimpleDiscoveryProperties()));
+        visitsServiceClient = new VisitsServiceClient(webClientFactory);
         visitsServiceClient.setHostname(server.url("/").toString());
     }
 
     @AfterEach
     void shutdown() throws IOException {
+        this.webClientFactory.destroy();
         this.server.shutdown();
     }
 
@@ -47,6 +79,107 @@ class VisitsServiceClientIntegrationTest {
         assertVisitDescriptionEquals(visits.block(), PET_ID,"test visit");
     }
 
+    @Test
+    void getVisitsForPets_prefersSmile() throws Exception {
+        byte[] body = new ObjectMapper(new SmileFactory()).writeValueAsBytes(Map.of("items", List.of(
+            Map.of("id", 5, "date", "2018-11-15", "description", "test visit", "petId", 1))));
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/x-jackson-smile")
+            .setBody(new Buffer().write(body)));
+
+        Mono<Visits> visits = visitsServiceClient.getVisitsForPets(Collections.singletonList(1));
+
+        assertVisitDescriptionEquals(visits.block(), PET_ID, "test visit");
+        assertEquals("application/x-jackson-smile, application/json;q=0.9", server.takeRequest().getHeader("Accept"));
+    }
+
+    @Test
+    void getVisitsForPets_publishesConnectionPoolMetrics() {
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"items\":[]}"));
+
+        visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block();
+
+        assertNotNull(Metrics.globalRegistry.find("reactor.netty.connection.provider.total.connections")
+            .tag("name", "visits-service")
+            .gauge());
+    }
+
+    @Test
+    void getVisitsForPets_recordsLatencyAndErrorBudget() {
+        properties.client("visits-service").getSlo().setLatency(Duration.ofSeconds(10));
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"items\":[]}"));
+        prepareResponse(response -> response.setResponseCode(503));
+
+        visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block();
+        assertThrows(WebClientResponseException.class, () -> visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block());
+
+        assertEquals(1, meterRegistry.get("gateway.downstream.latency")
+            .tags("service", "visits-service", "caller", "client", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("gateway.downstream.latency")
+            .tags("service", "visits-service", "caller", "client", "outcome", "server_error").timer().count());
+        // one bad call out of two, against an error budget of 0.1%
+        assertEquals(500, meterRegistry.get("gateway.slo.burn.rate").tag("service", "visits-service").gauge().value(), 0.001);
+    }
+
+    @Test
+    void getVisitsForPets_retriesAConnectionReset() {
+        prepareResponse(response -> response.setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        prepareResponse(response -> response
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"items\":[{\"id\":5,\"date\":\"2018-11-15\",\"description\":\"test visit\",\"petId\":1}]}"));
+
+        Mono<Visits> visits = visitsServiceClient.getVisitsForPets(Collections.singletonList(1));
+
+        assertVisitDescriptionEquals(visits.block(), PET_ID, "test visit");
+        assertEquals(1, meterRegistry.get("gateway.retries.sent").tag("service", "visits-service").counter().count());
+    }
+
+    @Test
+    void getVisitsForPets_splitsLongListsInChunks() throws InterruptedException {
+        properties.client("visits-service").getBatch().setChunkSize(2);
+        for (int chunk = 0; chunk < 2; chunk++) {
+            prepareResponse(response -> response
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"items\":[{\"id\":5,\"date\":\"2018-11-15\",\"description\":\"test visit\",\"petId\":1}]}"));
+        }
+
+        Visits visits = visitsServiceClient.getVisitsForPets(List.of(1, 2, 3), false).block();
+
+        assertEquals(2, visits.getItems().size());
+        Set<String> bodies = Set.of(server.takeRequest().getBody().readUtf8(), server.takeRequest().getBody().readUtf8());
+        assertEquals(Set.of("{\"petIds\":[1,2],\"fields\":[\"id\",\"date\",\"petId\"]}", "{\"petIds\":[3],\"fields\":[\"id\",\"date\",\"petId\"]}"), bodies);
+    }
+
+    @Test
+    void getVisitsForPets_withH2c() throws IOException {
+        ApiGatewayProperties properties = new ApiGatewayProperties();
+        properties.getH2c().setEnabled(true);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WebClientFactory h2cWebClientFactory = new WebClientFactory(WebClient.builder(), properties,
+            new ConcurrencyLimiters(properties, meterRegistry), new DownstreamLatencies(properties, meterRegistry), new RequestBudget(0.1, 10, 10), meterRegistry,
+            new SimpleDiscoveryClient(new SimpleDiscoveryProperties()));
+        try (MockWebServer h2cServer = new MockWebServer()) {
+            // fails on an HTTP/1.1 request
+            h2cServer.setProtocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+            h2cServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"items\":[{\"id\":5,\"date\":\"2018-11-15\",\"description\":\"test visit\",\"petId\":1}]}"));
+            VisitsServiceClient h2cClient = new VisitsServiceClient(h2cWebClientFactory);
+            h2cClient.setHostname(h2cServer.url("/").toString());
+
+            assertVisitDescriptionEquals(h2cClient.getVisitsForPets(Collections.singletonList(1)).block(), PET_ID, "test visit");
+            assertNotNull(Metrics.globalRegistry.find("reactor.netty.connection.provider.active.streams")
+                .tag("name", "http2.visits-service")
+                .gauge());
+        }
+        finally {
+            h2cWebClientFactory.destroy();
+        }
+    }
 
     private void assertVisitDescriptionEquals(Visits visits, int petId, String description) {
         assertEquals(1, visits.getItems().size());
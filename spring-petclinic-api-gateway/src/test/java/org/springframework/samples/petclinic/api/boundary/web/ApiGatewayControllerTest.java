@@ -1,29 +1,49 @@
 package org.springframework.samples.petclinic.api.boundary.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JAutoConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.LastKnownVisits;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerVersion;
 import org.springframework.samples.petclinic.api.dto.PetDetails;
 import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.VisitMarker;
+import org.springframework.samples.petclinic.api.dto.VisitMarkers;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.WebClientFactory;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 
 import java.net.ConnectException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @ExtendWith(SpringExtension.class)
 @WebFluxTest(controllers = ApiGatewayController.class)
-@Import({ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class})
+@Import({ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class,
+    MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class, OwnerDetailsCache.class,
+    LastKnownVisits.class})
 class ApiGatewayControllerTest {
 
     @MockBean
@@ -32,9 +52,20 @@ class ApiGatewayControllerTest {
     @MockBean
     private VisitsServiceClient visitsServiceClient;
 
+    @Autowired
+    private OwnerDetailsCache ownerDetailsCache;
+
+    @Autowired
+    private LastKnownVisits lastKnownVisits;
+
     @Autowired
     private WebTestClient client;
 
+    @BeforeEach
+    void clearCache() {
+        ownerDetailsCache.invalidateAll();
+        lastKnownVisits.invalidateAll();
+    }
 
     @Test
     void getOwnerDetails_withAvailableVisitsService() {
@@ -93,7 +124,365 @@ class ApiGatewayControllerTest {
             .expectStatus().isOk()
             .expectBody()
             .jsonPath("$.pets[0].name").isEqualTo("Garfield")
-            .jsonPath("$.pets[0].visits").isEmpty();
+            .jsonPath("$.pets[0].visits").isEmpty()
+            .jsonPath("$.visitsAsOf").doesNotExist();
+    }
+
+    @Test
+    void getOwnerDetails_fallbackServesLastKnownVisits() {
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenAnswer(invocation -> {
+                OwnerDetails owner = new OwnerDetails();
+                owner.setId(1);
+                PetDetails cat = new PetDetails();
+                cat.setId(20);
+                cat.setName("Garfield");
+                owner.getPets().add(cat);
+                return Mono.just(owner);
+            });
+        Visits visits = new Visits();
+        VisitDetails visit = new VisitDetails();
+        visit.setId(300);
+        visit.setDate("2023-05-04");
+        visit.setDescription("First visit");
+        visit.setPetId(20);
+        visits.getItems().add(visit);
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(20)))
+            .thenReturn(Mono.just(visits))
+            .thenReturn(Mono.error(new ConnectException("Simulate error")));
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.visitsAsOf").doesNotExist();
+        ownerDetailsCache.invalidateOwner(1);
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.pets[0].visits.length()").isEqualTo(1)
+            .jsonPath("$.pets[0].visits[0].date").isEqualTo("2023-05-04")
+            .jsonPath("$.pets[0].visits[0].description").isEqualTo("First visit")
+            .jsonPath("$.visitsAsOf").exists();
+    }
+
+    @Test
+    void getOwnersDetails_withSingleVisitsServiceCall() {
+        OwnerDetails george = new OwnerDetails();
+        george.setId(1);
+        PetDetails cat = new PetDetails();
+        cat.setId(20);
+        cat.setName("Garfield");
+        george.getPets().add(cat);
+
+        OwnerDetails betty = new OwnerDetails();
+        betty.setId(2);
+        PetDetails dog = new PetDetails();
+        dog.setId(21);
+        dog.setName("Snoopy");
+        betty.getPets().add(dog);
+
+        Mockito
+            .when(customersServiceClient.getOwners(Arrays.asList(1, 2)))
+            .thenReturn(Mono.just(Arrays.asList(betty, george)));
+
+        Visits visits = new Visits();
+        VisitDetails catVisit = new VisitDetails();
+        catVisit.setId(300);
+        catVisit.setDescription("First visit");
+        catVisit.setPetId(cat.getId());
+        visits.getItems().add(catVisit);
+        VisitDetails dogVisit = new VisitDetails();
+        dogVisit.setId(301);
+        dogVisit.setDescription("Rabies shot");
+        dogVisit.setPetId(dog.getId());
+        visits.getItems().add(dogVisit);
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Arrays.asList(cat.getId(), dog.getId())))
+            .thenReturn(Mono.just(visits));
+
+        client.get()
+            .uri("/api/gateway/owners?ids=1,2,1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.length()").isEqualTo(2)
+            .jsonPath("$[0].pets[0].name").isEqualTo("Garfield")
+            .jsonPath("$[0].pets[0].visits.length()").isEqualTo(1)
+            .jsonPath("$[0].pets[0].visits[0].description").isEqualTo("First visit")
+            .jsonPath("$[1].pets[0].name").isEqualTo("Snoopy")
+            .jsonPath("$[1].pets[0].visits.length()").isEqualTo(1)
+            .jsonPath("$[1].pets[0].visits[0].description").isEqualTo("Rabies shot");
+
+        Mockito.verify(visitsServiceClient, Mockito.times(1)).getVisitsForPets(Mockito.anyList());
     }
 
+    @Test
+    void getOwnersDetails_rejectsTooManyIds() {
+        String ids = IntStream.rangeClosed(1, ApiGatewayController.MAX_OWNER_IDS + 1)
+            .mapToObj(String::valueOf)
+            .collect(Collectors.joining(","));
+
+        client.get()
+            .uri("/api/gateway/owners?ids=" + ids)
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        Mockito.verifyNoInteractions(customersServiceClient);
+    }
+
+    @Test
+    void getOwnerDetails_servedFromCacheUntilInvalidated() {
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        PetDetails cat = new PetDetails();
+        cat.setId(20);
+        cat.setName("Garfield");
+        owner.getPets().add(cat);
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.getId())))
+            .thenReturn(Mono.just(new Visits()));
+
+        for (int i = 0; i < 2; i++) {
+            client.get()
+                .uri("/api/gateway/owners/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.pets[0].name").isEqualTo("Garfield");
+        }
+        Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+
+        ownerDetailsCache.invalidatePet(cat.getId());
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk();
+        Mockito.verify(customersServiceClient, Mockito.times(2)).getOwner(1);
+    }
+
+    @Test
+    void getOwnerDetails_fallbackIsNotCached() {
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        PetDetails cat = new PetDetails();
+        cat.setId(20);
+        cat.setName("Garfield");
+        owner.getPets().add(cat);
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.getId())))
+            .thenReturn(Mono.error(new ConnectException("Simulate error")));
+
+        for (int i = 0; i < 2; i++) {
+            client.get()
+                .uri("/api/gateway/owners/1")
+                .exchange()
+                .expectStatus().isOk();
+        }
+        Mockito.verify(customersServiceClient, Mockito.times(2)).getOwner(1);
+    }
+
+    @Test
+    void getOwnerDetails_withFieldsSkipsVisitsService() {
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        owner.setFirstName("George");
+        owner.setLastName("Franklin");
+        PetDetails cat = new PetDetails();
+        cat.setId(20);
+        cat.setName("Garfield");
+        owner.getPets().add(cat);
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+
+        client.get()
+            .uri("/api/gateway/owners/1?fields=lastName,pets.name")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.lastName").isEqualTo("Franklin")
+            .jsonPath("$.firstName").doesNotExist()
+            .jsonPath("$.pets[0].name").isEqualTo("Garfield")
+            .jsonPath("$.pets[0].id").doesNotExist()
+            .jsonPath("$.pets[0].visits").doesNotExist();
+
+        Mockito.verifyNoInteractions(visitsServiceClient);
+    }
+
+    @Test
+    void getOwnerDetails_withVisitFieldsLoadsVisitsWithoutDescriptions() {
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        PetDetails cat = new PetDetails();
+        cat.setId(20);
+        cat.setName("Garfield");
+        owner.getPets().add(cat);
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+
+        Visits visits = new Visits();
+        VisitDetails visit = new VisitDetails();
+        visit.setId(300);
+        visit.setDate("2023-05-04");
+        visit.setPetId(cat.getId());
+        visits.getItems().add(visit);
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.getId()), false))
+            .thenReturn(Mono.just(visits));
+
+        client.get()
+            .uri("/api/gateway/owners/1?fields=pets.name,pets.visits.date")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.id").doesNotExist()
+            .jsonPath("$.pets[0].name").isEqualTo("Garfield")
+            .jsonPath("$.pets[0].visits[0].date").isEqualTo("2023-05-04")
+            .jsonPath("$.pets[0].visits[0].id").doesNotExist()
+            .jsonPath("$.pets[0].visits[0].description").doesNotExist();
+
+        Mockito.verify(visitsServiceClient, Mockito.never()).getVisitsForPets(Mockito.anyList());
+    }
+
+    @Test
+    void getOwnerDetails_negotiatesSmileAndDefaultsToJson() throws Exception {
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        owner.setLastName("Franklin");
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenReturn(Mono.just(owner));
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.emptyList()))
+            .thenReturn(Mono.just(new Visits()));
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .accept(MediaType.ALL)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.APPLICATION_JSON);
+
+        byte[] smile = client.get()
+            .uri("/api/gateway/owners/1")
+            .accept(WebClientFactory.APPLICATION_SMILE)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(WebClientFactory.APPLICATION_SMILE)
+            .expectBody().returnResult().getResponseBody();
+        Assertions.assertEquals("Franklin", new ObjectMapper(new SmileFactory()).readTree(smile).get("lastName").asText());
+    }
+
+    @Test
+    void getOwnerDetails_answersMatchingETagFromCacheWithoutDownstreamCalls() {
+        mockVersionedOwner();
+
+        String etag = client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().cacheControl(CacheControl.noCache())
+            .returnResult(String.class).getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag)
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+            .expectBody().isEmpty();
+
+        Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+        Mockito.verify(customersServiceClient, Mockito.never()).getOwnerVersion(Mockito.anyInt());
+    }
+
+    @Test
+    void getOwnerDetails_answersMatchingETagFromVersionChecksOnCacheMiss() {
+        Visits visits = mockVersionedOwner();
+        String etag = client.get()
+            .uri("/api/gateway/owners/1")
+            .exchange()
+            .returnResult(String.class).getResponseHeaders().getETag();
+        ownerDetailsCache.invalidateAll();
+
+        OwnerVersion version = new OwnerVersion();
+        version.setVersion(3);
+        version.getPetIds().add(20);
+        Mockito
+            .when(customersServiceClient.getOwnerVersion(1))
+            .thenReturn(Mono.just(version));
+        VisitMarkers markers = new VisitMarkers();
+        VisitMarker marker = new VisitMarker();
+        marker.setPetId(20);
+        marker.setCount(1);
+        marker.setLastVisitId(300);
+        markers.getItems().add(marker);
+        Mockito
+            .when(visitsServiceClient.getVisitMarkers(Collections.singletonList(20)))
+            .thenReturn(Mono.just(markers));
+
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .header(HttpHeaders.IF_NONE_MATCH, "W/" + etag)
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+        Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+
+        // a new visit changes the marker of the pet, the aggregate is loaded again
+        marker.setCount(2);
+        marker.setLastVisitId(301);
+        VisitDetails visit = new VisitDetails();
+        visit.setId(301);
+        visit.setPetId(20);
+        visits.getItems().add(visit);
+        client.get()
+            .uri("/api/gateway/owners/1")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.pets[0].visits.length()").isEqualTo(2);
+        Mockito.verify(customersServiceClient, Mockito.times(2)).getOwner(1);
+    }
+
+    private Visits mockVersionedOwner() {
+        Mockito
+            .when(customersServiceClient.getOwner(1))
+            .thenAnswer(invocation -> {
+                OwnerDetails owner = new OwnerDetails();
+                owner.setId(1);
+                owner.setVersion(3);
+                PetDetails cat = new PetDetails();
+                cat.setId(20);
+                cat.setName("Garfield");
+                owner.getPets().add(cat);
+                return Mono.just(owner);
+            });
+        Visits visits = new Visits();
+        VisitDetails visit = new VisitDetails();
+        visit.setId(300);
+        visit.setPetId(20);
+        visits.getItems().add(visit);
+        Mockito
+            .when(visitsServiceClient.getVisitsForPets(Collections.singletonList(20)))
+            .thenReturn(Mono.just(visits));
+        return visits;
+    }
 }
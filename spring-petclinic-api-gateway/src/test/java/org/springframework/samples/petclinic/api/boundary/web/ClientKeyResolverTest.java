@@ -0,0 +1,40 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientKeyResolverTest {
+
+    private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+    private final ClientKeyResolver resolver = new ClientKeyResolver(properties);
+
+    @Test
+    void clientHeaderIsIgnoredByDefault() {
+        assertThat(resolve("203.0.113.7", "spoofed")).isEqualTo("ip:203.0.113.7");
+    }
+
+    @Test
+    void clientHeaderIsHonouredFromATrustedProxy() {
+        properties.getRateLimit().getTrustedProxies().add("10.0.0.5");
+
+        assertThat(resolve("10.0.0.5", "mobile-app")).isEqualTo("client:mobile-app");
+        assertThat(resolve("10.0.0.5", null)).isEqualTo("ip:10.0.0.5");
+        assertThat(resolve("203.0.113.7", "mobile-app")).isEqualTo("ip:203.0.113.7");
+    }
+
+    private String resolve(String remoteAddress, String clientId) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/customer/owners")
+            .remoteAddress(new InetSocketAddress(remoteAddress, 52000));
+        if (clientId != null) {
+            request.header("X-Client-Id", clientId);
+        }
+        return resolver.resolve(MockServerWebExchange.from(request)).block();
+    }
+}
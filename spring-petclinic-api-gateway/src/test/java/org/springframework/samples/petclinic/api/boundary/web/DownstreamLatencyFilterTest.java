@@ -0,0 +1,74 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.DownstreamLatencies;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamLatencyFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DownstreamLatencyFilter filter = new DownstreamLatencyFilter(
+        new DownstreamLatencies(new ApiGatewayProperties(), meterRegistry));
+
+    @Test
+    void latencyStopsWhenTheResponseIsCommitted() {
+        // the response is committed with its first chunk, the rest of the body is written slowly
+        GatewayFilterChain chain = exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            return exchange.getResponse().writeWith(Flux.concat(
+                Mono.just(chunk("[")),
+                Mono.delay(Duration.ofMillis(300)).map(tick -> chunk("]"))));
+        };
+
+        filter.filter(routed("lb://customers-service"), chain).block();
+
+        Timer timer = meterRegistry.get("gateway.downstream.latency")
+            .tags("service", "customers-service", "caller", "route", "outcome", "success").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isLessThan(300);
+    }
+
+    @Test
+    void failureBeforeTheResponseIsRecorded() {
+        GatewayFilterChain chain = exchange -> Mono.error(new IllegalStateException("connection refused"));
+
+        MockServerWebExchange exchange = routed("lb://customers-service");
+        filter.filter(exchange, chain).onErrorResume(e -> exchange.getResponse().setComplete()).block();
+
+        assertThat(meterRegistry.get("gateway.downstream.latency").tag("outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("gateway.downstream.latency").tag("outcome", "server_error").timer()).isNull();
+    }
+
+    private static DataBuffer chunk(String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockServerWebExchange routed(String uri) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/customer/owners"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+            .id("customers-service")
+            .uri(uri)
+            .predicate(e -> true)
+            .build());
+        return exchange;
+    }
+}
@@ -0,0 +1,46 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import reactor.core.publisher.Mono;
+
+class OwnerDetailsCacheInvalidationFilterTest {
+
+    private final OwnerDetailsCache ownerDetailsCache = Mockito.mock(OwnerDetailsCache.class);
+
+    private final OwnerDetailsCacheInvalidationFilter filter = new OwnerDetailsCacheInvalidationFilter(ownerDetailsCache);
+
+    private final GatewayFilterChain chain = exchange -> Mono.empty();
+
+    @Test
+    void ownerUpdateInvalidatesOwner() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.put("/api/customer/owners/7")), chain).block();
+
+        Mockito.verify(ownerDetailsCache).invalidateOwner(7);
+    }
+
+    @Test
+    void visitCreationInvalidatesOwner() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/api/visit/owners/7/pets/9/visits")), chain).block();
+
+        Mockito.verify(ownerDetailsCache).invalidateOwner(7);
+    }
+
+    @Test
+    void wildcardOwnerInvalidatesByPet() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.put("/api/customer/owners/*/pets/9")), chain).block();
+
+        Mockito.verify(ownerDetailsCache).invalidatePet(9);
+    }
+
+    @Test
+    void readsDoNotInvalidate() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/customer/owners/7")), chain).block();
+
+        Mockito.verifyNoInteractions(ownerDetailsCache);
+    }
+}
@@ -0,0 +1,68 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Relies on the manifest and the compressed variants generated by the build in {@code target/classes}
+ */
+class StaticAssetsHandlerTest {
+
+    private WebTestClient client;
+
+    private String appVersion;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        client = WebTestClient.bindToRouterFunction(new StaticAssetsHandler().route()).build();
+        appVersion = PropertiesLoaderUtils.loadProperties(new ClassPathResource("static-assets.properties"))
+            .getProperty("scripts/app.js");
+    }
+
+    @Test
+    void indexIsRevalidatedAndLinksFingerprintedScripts() {
+        client.get().uri("/")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().cacheControl(CacheControl.noCache())
+            .expectHeader().exists(HttpHeaders.ETAG)
+            .expectBody(String.class)
+            .value(html -> assertThat(html).contains("/scripts/app-" + appVersion + ".js"));
+    }
+
+    @Test
+    void fingerprintedScriptIsImmutableAndPrecompressed() {
+        client.get().uri("/scripts/app-" + appVersion + ".js")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable")
+            .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "br")
+            .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + appVersion + "\"");
+    }
+
+    @Test
+    void conditionalRequestIsNotModified() {
+        client.get().uri("/scripts/app.js")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + appVersion + "\"")
+            .exchange()
+            .expectStatus().isNotModified();
+    }
+
+    @Test
+    void acceptEncodingHonoursZeroQuality() {
+        assertThat(StaticAssetsHandler.accepts("gzip;q=1.0, br;q=0", "br")).isFalse();
+        assertThat(StaticAssetsHandler.accepts("gzip;q=1.0, br;q=0.5", "br")).isTrue();
+        assertThat(StaticAssetsHandler.accepts(null, "gzip")).isFalse();
+    }
+}
@@ -0,0 +1,82 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final ApiGatewayProperties.ConcurrencyLimit properties = new ApiGatewayProperties.ConcurrencyLimit();
+
+    @Test
+    void requestsAboveTheLimitAreRejected() {
+        properties.setInitialLimit(2);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+
+        first.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        first.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void limitGrowsWhileLatencyStaysLowAndTheLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(millis(10), limiter.getLimit(), false);
+        }
+
+        assertThat(limiter.getLimit()).isGreaterThan(properties.getInitialLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWhenItIsNotUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(millis(10), 1, false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(properties.getInitialLimit());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyIncreases() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(millis(10), limiter.getLimit(), false);
+        }
+        int warmLimit = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(millis(200), limiter.getLimit(), false);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(warmLimit);
+    }
+
+    @Test
+    void limitShrinksOnDropsDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(millis(4000), limiter.getLimit(), true);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(properties.getMinLimit());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,42 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ErrorBudgetTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ErrorBudget errorBudget = new ErrorBudget(0.99, Duration.ofSeconds(10));
+
+    @Test
+    void burnRateIsTheShareOfBadCallsOverTheBudget() {
+        assertThat(errorBudget.burnRate(0)).isZero();
+
+        for (int i = 0; i < 98; i++) {
+            errorBudget.record(true, 0);
+        }
+        errorBudget.record(false, 0);
+        errorBudget.record(false, SECOND);
+
+        assertThat(errorBudget.burnRate(SECOND)).isCloseTo(2, within(0.001));
+    }
+
+    @Test
+    void oldCallsLeaveTheWindow() {
+        errorBudget.record(false, 0);
+        errorBudget.record(true, 5 * SECOND);
+
+        assertThat(errorBudget.burnRate(9 * SECOND)).isCloseTo(50, within(0.001));
+        assertThat(errorBudget.burnRate(10 * SECOND)).isZero();
+
+        // the slice of the first call is reused
+        errorBudget.record(true, 20 * SECOND);
+        assertThat(errorBudget.burnRate(20 * SECOND)).isZero();
+    }
+}
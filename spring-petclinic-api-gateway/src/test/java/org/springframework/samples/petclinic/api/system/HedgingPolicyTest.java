@@ -0,0 +1,104 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingPolicyTest {
+
+    private final ApiGatewayProperties.Hedging properties = new ApiGatewayProperties.Hedging();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger instances = new AtomicInteger(2);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+    /**
+     * The first call hangs for a second, the following ones answer immediately.
+     */
+    private final Supplier<Mono<String>> slowPrimary = () -> calls.incrementAndGet() == 1
+        ? Mono.delay(Duration.ofSeconds(1)).thenReturn("primary").doOnCancel(() -> primaryCancelled.set(true))
+        : Mono.just("hedge");
+
+    @Test
+    void disabledPolicySendsASingleCall() {
+        HedgingPolicy policy = warmedUpPolicy();
+        properties.setEnabled(false);
+
+        assertThat(policy.execute(slowPrimary).block()).isEqualTo("primary");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void slowCallIsHedgedAndTheLoserCancelled() {
+        properties.setBudgetRatio(1.0);
+        HedgingPolicy policy = warmedUpPolicy();
+
+        assertThat(policy.execute(slowPrimary).block(Duration.ofMillis(500))).isEqualTo("hedge");
+        assertThat(calls).hasValue(2);
+        assertThat(primaryCancelled).isTrue();
+        assertThat(meterRegistry.get("gateway.hedges.fired").tag("service", "visits-service").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.hedges.won").tag("service", "visits-service").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void primaryCallBeatenByItsHedgeIsRecorded() {
+        properties.setBudgetRatio(1.0);
+        HedgingPolicy policy = warmedUpPolicy();
+
+        assertThat(policy.execute(slowPrimary).block(Duration.ofMillis(500))).isEqualTo("hedge");
+        // the hedge and the cancelled primary call
+        assertThat(policy.getSampleCount()).isEqualTo(102);
+    }
+
+    @Test
+    void callsToASingleInstanceAreNotHedged() {
+        properties.setBudgetRatio(1.0);
+        HedgingPolicy policy = warmedUpPolicy();
+        instances.set(1);
+
+        assertThat(policy.execute(slowPrimary).block()).isEqualTo("primary");
+        assertThat(calls).hasValue(1);
+        assertThat(meterRegistry.get("gateway.hedges.fired").counter().count()).isZero();
+    }
+
+    @Test
+    void hedgesAreNotSentOnceTheBudgetIsExhausted() {
+        properties.setBudgetRatio(0);
+        HedgingPolicy policy = warmedUpPolicy();
+
+        assertThat(policy.execute(slowPrimary).block()).isEqualTo("primary");
+        assertThat(calls).hasValue(1);
+        assertThat(meterRegistry.get("gateway.hedges.skipped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void callsAreNotHedgedBeforeEnoughLatenciesAreKnown() {
+        properties.setEnabled(true);
+        HedgingPolicy policy = new HedgingPolicy("visits-service", properties, instances::get, meterRegistry);
+
+        assertThat(policy.execute(slowPrimary).block()).isEqualTo("primary");
+        assertThat(calls).hasValue(1);
+    }
+
+    private HedgingPolicy warmedUpPolicy() {
+        properties.setEnabled(true);
+        HedgingPolicy policy = new HedgingPolicy("visits-service", properties, instances::get, meterRegistry);
+        for (int i = 1; i <= 100; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(i % 20));
+        }
+        assertThat(policy.getDelayNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(19));
+        return policy;
+    }
+}
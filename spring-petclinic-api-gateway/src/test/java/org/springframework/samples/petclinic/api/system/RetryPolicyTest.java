@@ -0,0 +1,85 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private final ApiGatewayProperties.Retry properties = new ApiGatewayProperties.Retry();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * Fails on the connection until the given call, then answers.
+     */
+    private Supplier<Mono<String>> connectionResetUntil(int call) {
+        return () -> calls.incrementAndGet() < call
+            ? Mono.error(new WebClientRequestException(new IOException("Connection reset by peer"), HttpMethod.GET,
+                URI.create("http://visits-service/pets/visits"), HttpHeaders.EMPTY))
+            : Mono.just("visits");
+    }
+
+    @Test
+    void connectionFailuresAreRetried() {
+        RetryPolicy policy = new RetryPolicy("visits-service", properties, new RequestBudget(0.1, 10, 10), meterRegistry);
+
+        assertThat(policy.execute(connectionResetUntil(3)).block()).isEqualTo("visits");
+        assertThat(calls).hasValue(3);
+        assertThat(meterRegistry.get("gateway.retries.sent").tag("service", "visits-service").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void retriesStopAfterTheMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy("visits-service", properties, new RequestBudget(0.1, 10, 10), meterRegistry);
+
+        assertThatThrownBy(() -> policy.execute(connectionResetUntil(4)).block()).isInstanceOf(WebClientRequestException.class);
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void retriesAreNotSentOnceTheBudgetIsExhausted() {
+        RetryPolicy policy = new RetryPolicy("visits-service", properties, new RequestBudget(0.1, 10, 1), meterRegistry);
+
+        assertThatThrownBy(() -> policy.execute(connectionResetUntil(3)).block()).isInstanceOf(WebClientRequestException.class);
+        assertThat(calls).hasValue(2);
+        assertThat(meterRegistry.get("gateway.retries.skipped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void errorResponsesAreNotRetried() {
+        RetryPolicy policy = new RetryPolicy("visits-service", properties, new RequestBudget(0.1, 10, 10), meterRegistry);
+
+        Supplier<Mono<String>> unavailable = () -> {
+            calls.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY, new byte[0], null));
+        };
+
+        assertThatThrownBy(() -> policy.execute(unavailable).block()).isInstanceOf(WebClientResponseException.class);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void backoffGrowsUpToTheMaximumWithJitter() {
+        RetryPolicy policy = new RetryPolicy("visits-service", properties, new RequestBudget(0.1, 10), meterRegistry);
+
+        assertThat(policy.backoff(0)).isBetween(Duration.ofMillis(10), Duration.ofMillis(20));
+        assertThat(policy.backoff(1)).isBetween(Duration.ofMillis(20), Duration.ofMillis(40));
+        assertThat(policy.backoff(10)).isBetween(Duration.ofMillis(100), Duration.ofMillis(200));
+    }
+}
@@ -0,0 +1,74 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketRateLimiterTest {
+
+    private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void burstIsAllowedThenRequestsAreRejected() {
+        ApiGatewayProperties.Limit limit = new ApiGatewayProperties.Limit();
+        limit.setReplenishRate(1);
+        limit.setBurstCapacity(3);
+        properties.getRateLimit().setEnabled(true);
+        properties.getRateLimit().getRoutes().put("customers-service", limit);
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(properties, meterRegistry);
+
+        for (int remaining = 2; remaining >= 0; remaining--) {
+            RateLimiter.Response response = limiter.isAllowed("customers-service", "ip:10.0.0.1").block();
+            assertThat(response.isAllowed()).isTrue();
+            assertThat(response.getHeaders()).containsEntry(TokenBucketRateLimiter.REMAINING_HEADER, String.valueOf(remaining));
+        }
+        RateLimiter.Response rejected = limiter.isAllowed("customers-service", "ip:10.0.0.1").block();
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getHeaders())
+            .containsEntry(TokenBucketRateLimiter.REMAINING_HEADER, "0")
+            .containsEntry(TokenBucketRateLimiter.BURST_CAPACITY_HEADER, "3")
+            .containsEntry(TokenBucketRateLimiter.REPLENISH_RATE_HEADER, "1");
+        assertThat(limiter.isAllowed("customers-service", "ip:10.0.0.2").block().isAllowed()).isTrue();
+        assertThat(limiter.isAllowed("vets-service", "ip:10.0.0.1").block().isAllowed()).isTrue();
+        assertThat(meterRegistry.get("gateway.ratelimit.requests").tag("route", "customers-service")
+            .tag("outcome", "rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void bucketRefillsAtTheReplenishRate() {
+        ApiGatewayProperties.Limit limit = new ApiGatewayProperties.Limit();
+        limit.setReplenishRate(10);
+        limit.setBurstCapacity(2);
+        AtomicLong bucket = new AtomicLong(Long.MIN_VALUE);
+        long now = 0;
+
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isEqualTo(1);
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isZero();
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isEqualTo(-1);
+
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isZero();
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isEqualTo(-1);
+
+        now += TimeUnit.SECONDS.toNanos(10);
+        assertThat(TokenBucketRateLimiter.tryConsume(bucket, limit, now)).isEqualTo(1);
+    }
+
+    @Test
+    void limiterIsDisabledByDefault() {
+        properties.getRateLimit().getDefaults().setBurstCapacity(1);
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(properties, meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.isAllowed("vets-service", "anonymous").block().isAllowed()).isTrue();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.samples.petclinic.api.application.PetVisitsJoin;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.PetType;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owner details aggregation of the gateway, from the customers-service and visits-service JSON
+ * payloads to the JSON response: decoding of each payload into the {@code api.dto} classes,
+ * serialization of the joined response and the whole pipeline.
+ * <p>
+ * The {@link ObjectMapper} is configured like the one of the gateway, payloads are handled as
+ * byte arrays like the WebFlux codecs do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OwnerDetailsCodecBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int pets;
+
+    @Param({"5"})
+    private int visitsPerPet;
+
+    @Param({"32", "1024"})
+    private int descriptionLength;
+
+    private ObjectMapper objectMapper;
+
+    private byte[] ownerJson;
+
+    private byte[] visitsJson;
+
+    private OwnerDetails ownerDetails;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+            .filters(new SimpleFilterProvider().setFailOnUnknownId(false))
+            .build();
+
+        OwnerDetails owner = new OwnerDetails();
+        owner.setId(1);
+        owner.setFirstName("George");
+        owner.setLastName("Franklin");
+        owner.setAddress("110 W. Liberty St.");
+        owner.setCity("Madison");
+        owner.setTelephone("6085551023");
+        PetType cat = new PetType();
+        cat.setName("cat");
+        for (int petId = 1; petId <= pets; petId++) {
+            PetDetails pet = new PetDetails();
+            pet.setId(petId);
+            pet.setName("Pet " + petId);
+            pet.setBirthDate("2020-09-07");
+            pet.setType(cat);
+            owner.getPets().add(pet);
+        }
+        ownerJson = objectMapper.writeValueAsBytes(owner);
+
+        Visits visits = new Visits();
+        String description = "x".repeat(descriptionLength);
+        LocalDate date = LocalDate.of(2023, 1, 1);
+        // visits-service returns the visits in insertion order, i.e. interleaved between pets
+        for (int visitId = 0; visitId < pets * visitsPerPet; visitId++) {
+            VisitDetails visit = new VisitDetails();
+            visit.setId(visitId);
+            visit.setPetId(visitId % pets + 1);
+            visit.setDate(date.plusDays(visitId).toString());
+            visit.setDescription(description);
+            visits.getItems().add(visit);
+        }
+        visitsJson = objectMapper.writeValueAsBytes(visits);
+
+        ownerDetails = objectMapper.readValue(ownerJson, OwnerDetails.class);
+        PetVisitsJoin.join(ownerDetails, objectMapper.readValue(visitsJson, Visits.class).getItems());
+    }
+
+    @Benchmark
+    public OwnerDetails decodeOwner() throws IOException {
+        return objectMapper.readValue(ownerJson, OwnerDetails.class);
+    }
+
+    @Benchmark
+    public Visits decodeVisits() throws IOException {
+        return objectMapper.readValue(visitsJson, Visits.class);
+    }
+
+    @Benchmark
+    public byte[] serializeOwnerDetails() throws IOException {
+        return objectMapper.writeValueAsBytes(ownerDetails);
+    }
+
+    /**
+     * Decodes both payloads, joins the visits to the pets and serializes the response.
+     */
+    @Benchmark
+    public byte[] aggregate() throws IOException {
+        OwnerDetails owner = objectMapper.readValue(ownerJson, OwnerDetails.class);
+        Visits visits = objectMapper.readValue(visitsJson, Visits.class);
+        PetVisitsJoin.join(owner, visits.getItems());
+        return objectMapper.writeValueAsBytes(owner);
+    }
+}
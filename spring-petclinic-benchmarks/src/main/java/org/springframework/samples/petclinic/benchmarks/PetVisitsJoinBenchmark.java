@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.api.application.PetVisitsJoin;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Joins the visits of an owner to its pets, comparing the per pet stream filter that
+ * {@code ApiGatewayController} used to run with the single pass {@link PetVisitsJoin}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PetVisitsJoinBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int pets;
+
+    @Param({"5"})
+    private int visitsPerPet;
+
+    private OwnerDetails owner;
+
+    private Visits visits;
+
+    @Setup
+    public void setUp() {
+        owner = new OwnerDetails();
+        visits = new Visits();
+        for (int petId = 1; petId <= pets; petId++) {
+            PetDetails pet = new PetDetails();
+            pet.setId(petId);
+            owner.getPets().add(pet);
+        }
+        // visits-service returns the visits in insertion order, i.e. interleaved between pets
+        for (int visitId = 0; visitId < pets * visitsPerPet; visitId++) {
+            VisitDetails visit = new VisitDetails();
+            visit.setId(visitId);
+            visit.setPetId(visitId % pets + 1);
+            visits.getItems().add(visit);
+        }
+    }
+
+    @Benchmark
+    public OwnerDetails streamFilterJoin() {
+        clearVisits();
+        owner.getPets()
+            .forEach(pet -> pet.getVisits()
+                .addAll(visits.getItems().stream()
+                    .filter(v -> v.getPetId() == pet.getId())
+                    .collect(Collectors.toList()))
+            );
+        return owner;
+    }
+
+    @Benchmark
+    public OwnerDetails indexedJoin() {
+        clearVisits();
+        PetVisitsJoin.join(owner, visits.getItems());
+        return owner;
+    }
+
+    private void clearVisits() {
+        for (PetDetails pet : owner.getPets()) {
+            pet.getVisits().clear();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.config;
+
+import java.net.URI;
+import java.util.OptionalLong;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Hibernate second-level and query cache in local Caffeine caches, through JCache, enabled with
+ * {@code customers.cache.enabled=true}.
+ * <p>
+ * Each region of {@link SecondLevelCacheProperties} is created up front with its own size and time to
+ * live, and reported as {@code cache.*} meters tagged with its name.
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.cache.enabled", havingValue = "true")
+@EnableConfigurationProperties(SecondLevelCacheProperties.class)
+public class SecondLevelCacheConfig {
+
+    /**
+     * Closed by Hibernate along with the session factory
+     */
+    @Bean
+    CacheManager secondLevelCacheManager(SecondLevelCacheProperties properties) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        // a manager of its own, the caches of another application context in the same JVM are not shared
+        URI uri = URI.create("customers-service-" + ObjectUtils.getIdentityHexString(this));
+        CacheManager cacheManager = provider.getCacheManager(uri, provider.getDefaultClassLoader());
+        properties.getRegions().forEach((name, region) -> {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(region.getMaxSize()));
+            if (region.getTtl() != null) {
+                configuration.setExpireAfterWrite(OptionalLong.of(region.getTtl().toNanos()));
+            }
+            // Hibernate caches disassembled entries, copying them on every access would be wasted
+            configuration.setStoreByValue(false);
+            configuration.setStatisticsEnabled(true);
+            cacheManager.createCache(name, configuration);
+        });
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer secondLevelCache(CacheManager secondLevelCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.FAIL.getExternalRepresentation());
+        };
+    }
+
+    @Bean
+    MeterBinder secondLevelCacheMetrics(CacheManager secondLevelCacheManager, SecondLevelCacheProperties properties) {
+        return registry -> properties.getRegions().keySet().forEach(name ->
+            JCacheMetrics.monitor(registry, secondLevelCacheManager.getCache(name), Tags.of("cache.manager", "hibernate")));
+    }
+}
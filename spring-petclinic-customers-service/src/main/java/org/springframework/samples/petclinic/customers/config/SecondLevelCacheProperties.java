@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Hibernate second-level and query cache of the entities and of the pet type queries.
+ */
+@Data
+@ConfigurationProperties(prefix = "customers.cache")
+public class SecondLevelCacheProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Cache regions by name. Every region of the entities and queries has to be listed, Hibernate fails
+     * to start on a missing one.
+     */
+    private Map<String, Region> regions = new LinkedHashMap<>();
+
+    @Data
+    public static class Region {
+
+        private long maxSize = 1_000;
+
+        /**
+         * Time to live of an entry after it was written, none when not set.
+         */
+        private Duration ttl;
+    }
+}
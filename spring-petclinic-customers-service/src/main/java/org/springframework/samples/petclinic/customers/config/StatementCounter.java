@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.hibernate.BaseSessionEventListener;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Counts the SQL statements prepared by one Hibernate session and records them in
+ * {@code petclinic.db.statements} when the session is closed, tagged with the method and the URI template
+ * of the request that opened it, so that an endpoint starting to load its data row by row shows up.
+ * <p>
+ * With open-in-view the session lasts as long as the request, whatever the thread its statements run on,
+ * and the statements of lazy loads while writing the response are counted as well. Sessions opened
+ * outside of a request, e.g. by the pet type refresh, are not recorded.
+ */
+class StatementCounter extends BaseSessionEventListener {
+
+    private final transient DistributionSummary statements;
+
+    private int count;
+
+    StatementCounter(MeterRegistry meterRegistry) {
+        this.statements = RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+            ? summary(attributes.getRequest(), meterRegistry)
+            : null;
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+        count++;
+    }
+
+    @Override
+    public void end() {
+        if (statements != null) {
+            statements.record(count);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    private static DistributionSummary summary(HttpServletRequest request, MeterRegistry meterRegistry) {
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return DistributionSummary.builder("petclinic.db.statements")
+            .description("SQL statements per request")
+            .baseUnit("statements")
+            .tag("method", request.getMethod())
+            .tag("uri", uri != null ? uri.toString() : "UNKNOWN")
+            .register(meterRegistry);
+    }
+}
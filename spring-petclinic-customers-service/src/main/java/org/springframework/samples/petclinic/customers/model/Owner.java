@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -29,12 +30,17 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.beans.support.MutableSortDefinition;
 import org.springframework.beans.support.PropertyComparator;
 import org.springframework.core.style.ToStringCreator;
@@ -51,10 +57,16 @@ import org.springframework.core.style.ToStringCreator;
  */
 @Entity
 @Table(name = "owners")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "owners")
 public class Owner {
 
+    /**
+     * Allocated by blocks from a sequence, unlike an identity column it lets Hibernate batch the inserts.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "owners_seq")
+    @SequenceGenerator(name = "owners_seq", sequenceName = "owners_seq", allocationSize = 50)
     @Getter
     private Integer id;
 
@@ -89,7 +101,20 @@ public class Owner {
     @Digits(fraction = 0, integer = 12)
     private String telephone;
 
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, mappedBy = "owner")
+    /**
+     * Incremented on every change of the owner or of one of its pets, see {@link OwnerVersionRepository#incrementVersion(Owner)}.
+     */
+    @Getter
+    @Version
+    @Column(name = "version")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer version;
+
+    /**
+     * Loaded on demand, the read paths of {@link OwnerRepository} fetch the pets with the owner when needed.
+     */
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY, mappedBy = "owner")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "owner-pets")
     private Set<Pet> pets;
 
     protected Set<Pet> getPetsInternal() {
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+import java.util.Date;
+
+import lombok.Value;
+
+/**
+ * An owner joined with one of its pets, the pet fields being {@code null} for an owner without pets.
+ * Not an entity, so that a stream of them does not fill the persistence context.
+ */
+@Value
+public class OwnerExportRow {
+
+    int ownerId;
+
+    String firstName;
+
+    String lastName;
+
+    String address;
+
+    String city;
+
+    String telephone;
+
+    Integer petId;
+
+    String petName;
+
+    Date petBirthDate;
+
+    String petType;
+}
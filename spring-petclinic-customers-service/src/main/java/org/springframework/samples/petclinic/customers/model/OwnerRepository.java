@@ -15,7 +15,19 @@
  */
 package org.springframework.samples.petclinic.customers.model;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant with Spring Data naming
@@ -27,4 +39,74 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * @author Michael Isvy
  * @author Maciej Szarlinski
  */
-public interface OwnerRepository extends JpaRepository<Owner, Integer> { }
+public interface OwnerRepository extends JpaRepository<Owner, Integer>, OwnerBatchRepository, OwnerVersionRepository {
+
+    int EXPORT_FETCH_SIZE = 500;
+
+    /**
+     * Owner with its pets and their types, in a single query. Read without writing to the second-level
+     * cache: Hibernate 6.1 fails to put a pet in the cache while its owner is being fetched in the same row.
+     */
+    @EntityGraph(attributePaths = {"pets", "pets.type"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    @Query("SELECT owner FROM Owner owner WHERE owner.id = :ownerId")
+    Optional<Owner> findWithPetsById(@Param("ownerId") int ownerId);
+
+    /**
+     * Owners with their pets and their types, in a single query whatever the number of owners. Not written
+     * to the second-level cache, as {@link #findWithPetsById(int)}.
+     */
+    @EntityGraph(attributePaths = {"pets", "pets.type"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    @Query("SELECT owner FROM Owner owner WHERE owner.id IN :ownerIds")
+    List<Owner> findAllWithPetsByIdIn(@Param("ownerIds") Collection<Integer> ownerIds);
+
+    /**
+     * Summaries of the owners whose last name matches the pattern, after the given last name and id in
+     * this order. The range is read from the owners_last_name index instead of sorting the whole table.
+     * The pets of the page are read afterwards with {@link #findAllWithPetsByIdIn(Collection)}, as a
+     * limit on a fetch join would be applied in memory.
+     *
+     * @param lastNamePattern a LIKE pattern escaped with a backslash
+     * @param page            the number of owners to read, always from the first page
+     */
+    @Query("SELECT new org.springframework.samples.petclinic.customers.model.OwnerSummary(owner.id, owner.firstName,"
+        + " owner.lastName, owner.address, owner.city, owner.telephone)"
+        + " FROM Owner owner WHERE owner.lastName LIKE :lastNamePattern ESCAPE '\\'"
+        + " AND (owner.lastName > :afterLastName OR (owner.lastName = :afterLastName AND owner.id > :afterId))"
+        + " ORDER BY owner.lastName, owner.id")
+    List<OwnerSummary> findSummaryPageByLastName(@Param("lastNamePattern") String lastNamePattern,
+                                                 @Param("afterLastName") String afterLastName,
+                                                 @Param("afterId") int afterId,
+                                                 Pageable page);
+
+    /**
+     * Every owner with its pets and their types, in a single query. Not written to the second-level cache,
+     * as {@link #findWithPetsById(int)}.
+     */
+    @Override
+    @EntityGraph(attributePaths = {"pets", "pets.type"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    List<Owner> findAll();
+
+    /**
+     * Owners whose last name starts with the prefix, matched literally, unpaged, with their pets and their
+     * types in a single query. Not written to the second-level cache, as {@link #findWithPetsById(int)}.
+     */
+    @EntityGraph(attributePaths = {"pets", "pets.type"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "GET"))
+    List<Owner> findByLastNameStartingWith(String lastName);
+
+    /**
+     * Every owner joined with its pets, ordered by owner id, read through a forward-only cursor by
+     * blocks of {@value #EXPORT_FETCH_SIZE} rows. The stream has to be read and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("SELECT new org.springframework.samples.petclinic.customers.model.OwnerExportRow(owner.id, owner.firstName,"
+        + " owner.lastName, owner.address, owner.city, owner.telephone, pet.id, pet.name, pet.birthDate, type.name)"
+        + " FROM Owner owner LEFT JOIN owner.pets pet LEFT JOIN pet.type type ORDER BY owner.id")
+    Stream<OwnerExportRow> streamAllForExport();
+
+    @Query("SELECT owner.version FROM Owner owner WHERE owner.id = :ownerId")
+    Optional<Integer> findVersionById(@Param("ownerId") int ownerId);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+import lombok.Value;
+
+/**
+ * Projection of an {@link Owner} without its pets, selected by the repository instead of the whole
+ * owner when the client does not ask for the pets.
+ */
+@Value
+public class OwnerSummary {
+
+    Integer id;
+
+    String firstName;
+
+    String lastName;
+
+    String address;
+
+    String city;
+
+    String telephone;
+}
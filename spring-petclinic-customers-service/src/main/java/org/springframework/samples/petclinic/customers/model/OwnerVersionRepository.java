@@ -0,0 +1,29 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+/**
+ * Version changes of owners whose row is unchanged, see {@link OwnerRepository}.
+ */
+public interface OwnerVersionRepository {
+
+    /**
+     * Increments the version of the managed owner when the transaction commits, for a change of one of
+     * its pets. Only this owner is updated in the second-level cache, where a bulk update would evict
+     * every owner.
+     */
+    void incrementVersion(Owner owner);
+}
@@ -18,8 +18,12 @@ package org.springframework.samples.petclinic.customers.model;
 import java.util.List;
 import java.util.Optional;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 /**
@@ -38,12 +42,27 @@ public interface PetRepository extends JpaRepository<Pet, Integer> {
      * Retrieve all {@link PetType}s from the data store.
      * @return a Collection of {@link PetType}s.
      */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "pet-type-queries")})
     @Query("SELECT ptype FROM PetType ptype ORDER BY ptype.name")
     List<PetType> findPetTypes();
 
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "pet-type-queries")})
     @Query("FROM PetType ptype WHERE ptype.id = :typeId")
     Optional<PetType> findPetTypeById(@Param("typeId") int typeId);
 
+    @Query("SELECT pet.id FROM Pet pet WHERE pet.owner.id = :ownerId ORDER BY pet.id")
+    List<Integer> findIdsByOwnerId(@Param("ownerId") int ownerId);
+
+    /**
+     * Pet with its type and its owner, in a single query.
+     */
+    @EntityGraph(attributePaths = {"type", "owner"})
+    @Query("SELECT pet FROM Pet pet WHERE pet.id = :petId")
+    Optional<Pet> findWithOwnerById(@Param("petId") int petId);
 
 }
 
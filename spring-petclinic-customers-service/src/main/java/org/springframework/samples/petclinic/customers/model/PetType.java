@@ -17,7 +17,10 @@ package org.springframework.samples.petclinic.customers.model;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -32,6 +35,8 @@ import jakarta.persistence.Table;
  */
 @Entity
 @Table(name = "types")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "pet-types")
 public class PetType {
 
     @Id
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of the pet types, reference data that almost never changes, loaded at startup and
+ * reloaded every {@code customers.pet-types.refresh-interval} or on demand.
+ * <p>
+ * Lookups read an immutable snapshot, a list sorted by name, a map by id and a map by name, replaced as
+ * a whole on each reload, whatever the ids generated by the pet type sequence. The cached types are detached entities, shared by all requests and not to be
+ * modified.
+ */
+@Component
+@Slf4j
+public class PetTypeCache implements SmartInitializingSingleton {
+
+    private final PetRepository petRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(List.of(), Map.of(), Map.of());
+
+    public PetTypeCache(PetRepository petRepository) {
+        this.petRepository = petRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+    }
+
+    /**
+     * @return the number of pet types loaded
+     */
+    @Scheduled(initialDelayString = "${customers.pet-types.refresh-interval:PT10M}",
+        fixedDelayString = "${customers.pet-types.refresh-interval:PT10M}")
+    public int refresh() {
+        List<PetType> types = List.copyOf(petRepository.findPetTypes());
+        Map<Integer, PetType> byId = types.stream()
+            .collect(Collectors.toUnmodifiableMap(PetType::getId, Function.identity()));
+        Map<String, PetType> byName = types.stream()
+            .filter(type -> type.getName() != null)
+            .collect(Collectors.toUnmodifiableMap(type -> type.getName().toLowerCase(Locale.ROOT), Function.identity(), (first, second) -> first));
+        snapshot = new Snapshot(types, byId, byName);
+        log.debug("Loaded {} pet types", types.size());
+        return types.size();
+    }
+
+    /**
+     * @return the pet types sorted by name
+     */
+    public List<PetType> findAll() {
+        return snapshot.sorted();
+    }
+
+    /**
+     * A type created since the last reload is looked up in the database.
+     */
+    public Optional<PetType> findById(int typeId) {
+        PetType type = snapshot.byId().get(typeId);
+        return type != null ? Optional.of(type) : petRepository.findPetTypeById(typeId);
+    }
+
+    /**
+     * Lookup by case insensitive name, from the snapshot only
+     */
+    public Optional<PetType> findByName(String name) {
+        return Optional.ofNullable(snapshot.byName().get(name.toLowerCase(Locale.ROOT)));
+    }
+
+    private record Snapshot(List<PetType> sorted, Map<Integer, PetType> byId, Map<String, PetType> byName) {
+    }
+}
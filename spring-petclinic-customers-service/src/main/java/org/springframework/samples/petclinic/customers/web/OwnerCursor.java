@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Position in the owners sorted by last name then id, given to clients as an opaque token to read the
+ * next page from.
+ */
+record OwnerCursor(String lastName, int id) {
+
+    static final OwnerCursor FIRST = new OwnerCursor("", 0);
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((id + ":" + lastName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static OwnerCursor decode(String token) {
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = cursor.indexOf(':');
+            return new OwnerCursor(cursor.substring(colon + 1), Integer.parseInt(cursor.substring(0, colon)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor " + token);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.samples.petclinic.customers.model.OwnerExportRow;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Export of all the owners with their pets, in the {@link OwnerImportReader formats} of the import plus
+ * the ids, so that an export can be imported back.
+ * <p>
+ * The owners are read through a forward-only cursor, by blocks of {@link OwnerRepository#EXPORT_FETCH_SIZE}
+ * rows, and written as they come: only the owner being written is held in memory, whatever the number
+ * of owners. The read transaction lasts as long as the response.
+ */
+@RestController
+@Timed("petclinic.owner.export")
+@Slf4j
+class OwnerExportResource {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private static final String CSV_HEADER = "id,firstName,lastName,address,city,telephone,petId,petName,petBirthDate,petType";
+
+    private final OwnerRepository ownerRepository;
+
+    private final ObjectMapper objectMapper;
+
+    OwnerExportResource(OwnerRepository ownerRepository, ObjectMapper objectMapper) {
+        this.ownerRepository = ownerRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping(value = "/owners/export", produces = NDJSON)
+    @Transactional(readOnly = true)
+    public void exportNdjson(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        long count = 0;
+        try (Stream<OwnerExportRow> rows = ownerRepository.streamAllForExport()) {
+            ExportedOwner owner = null;
+            for (OwnerExportRow row : (Iterable<OwnerExportRow>) rows::iterator) {
+                if (owner == null || owner.id() != row.getOwnerId()) {
+                    if (owner != null) {
+                        write(out, owner);
+                        count++;
+                    }
+                    owner = new ExportedOwner(row.getOwnerId(), row.getFirstName(), row.getLastName(),
+                        row.getAddress(), row.getCity(), row.getTelephone(), new ArrayList<>());
+                }
+                if (row.getPetId() != null) {
+                    owner.pets().add(new ExportedPet(row.getPetId(), row.getPetName(), date(row.getPetBirthDate()), row.getPetType()));
+                }
+            }
+            if (owner != null) {
+                write(out, owner);
+                count++;
+            }
+        }
+        log.info("Exported {} owners", count);
+    }
+
+    @GetMapping(value = "/owners/export", produces = "text/csv")
+    @Transactional(readOnly = true)
+    public void exportCsv(HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        long count = 0;
+        out.write(CSV_HEADER);
+        out.write('\n');
+        try (Stream<OwnerExportRow> rows = ownerRepository.streamAllForExport()) {
+            for (OwnerExportRow row : (Iterable<OwnerExportRow>) rows::iterator) {
+                out.write(String.join(",", String.valueOf(row.getOwnerId()), csv(row.getFirstName()),
+                    csv(row.getLastName()), csv(row.getAddress()), csv(row.getCity()), csv(row.getTelephone()),
+                    row.getPetId() != null ? String.valueOf(row.getPetId()) : "", csv(row.getPetName()),
+                    date(row.getPetBirthDate()), csv(row.getPetType())));
+                out.write('\n');
+                count++;
+            }
+        }
+        out.flush();
+        log.info("Exported {} owner and pet lines", count);
+    }
+
+    private void write(OutputStream out, ExportedOwner owner) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(owner));
+        out.write('\n');
+    }
+
+    /**
+     * @return the field, quoted when it holds a separator, a quote or a line break
+     */
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * @return yyyy-MM-dd, as read by the import, or an empty string
+     */
+    private static String date(Date date) {
+        if (date == null) {
+            return "";
+        }
+        java.sql.Date sqlDate = date instanceof java.sql.Date d ? d : new java.sql.Date(date.getTime());
+        return sqlDate.toLocalDate().toString();
+    }
+
+    record ExportedOwner(int id, String firstName, String lastName, String address, String city, String telephone,
+                         List<ExportedPet> pets) {
+    }
+
+    record ExportedPet(int id, String name, String birthDate, String type) {
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+
+/**
+ * Streaming reader of the owners given to {@link OwnerImportResource}, one line at a time.
+ * <ul>
+ * <li>NDJSON: an owner per line, with its pets, e.g.
+ * {@code {"firstName":"George","lastName":"Franklin",...,"pets":[{"name":"Leo","birthDate":"2010-09-07","type":"cat"}]}}</li>
+ * <li>CSV: a header line then a pet per line, with the columns {@code firstName,lastName,address,city,telephone}
+ * and optionally {@code petName,petBirthDate,petType}. Consecutive lines of the same owner make a single
+ * owner, a line without pet name an owner without pets. Fields may be quoted, not span lines.</li>
+ * </ul>
+ */
+final class OwnerImportReader {
+
+    private static final List<String> OWNER_COLUMNS = List.of("firstName", "lastName", "address", "city", "telephone");
+
+    private OwnerImportReader() {
+    }
+
+    static void readNdjson(BufferedReader in, ObjectMapper objectMapper, RowHandler handler) throws IOException {
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            Row row;
+            try {
+                row = new Row(lineNumber, objectMapper.readValue(line, OwnerRecord.class), null);
+            } catch (JsonProcessingException e) {
+                row = new Row(lineNumber, null, "invalid JSON: " + e.getOriginalMessage());
+            }
+            handler.accept(row);
+        }
+    }
+
+    static void readCsv(BufferedReader in, RowHandler handler) throws IOException {
+        String header = in.readLine();
+        if (header == null) {
+            return;
+        }
+        List<String> columns = split(header).stream().map(String::trim).toList();
+        if (!columns.containsAll(OWNER_COLUMNS)) {
+            handler.accept(new Row(1, null, "header misses some of the columns " + OWNER_COLUMNS));
+            return;
+        }
+        int lineNumber = 1;
+        Row owner = null;
+        List<String> ownerKey = null;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields;
+            try {
+                fields = split(line);
+            } catch (IllegalArgumentException e) {
+                fields = null;
+            }
+            if (fields == null || fields.size() != columns.size()) {
+                if (owner != null) {
+                    handler.accept(owner);
+                    owner = null;
+                }
+                handler.accept(new Row(lineNumber, null, "expected " + columns.size() + " fields"));
+                continue;
+            }
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                values.put(columns.get(i), fields.get(i));
+            }
+            List<String> key = OWNER_COLUMNS.stream().map(values::get).toList();
+            if (owner == null || !key.equals(ownerKey)) {
+                if (owner != null) {
+                    handler.accept(owner);
+                }
+                owner = new Row(lineNumber, new OwnerRecord(), null);
+                owner.owner().setFirstName(values.get("firstName"));
+                owner.owner().setLastName(values.get("lastName"));
+                owner.owner().setAddress(values.get("address"));
+                owner.owner().setCity(values.get("city"));
+                owner.owner().setTelephone(values.get("telephone"));
+                ownerKey = key;
+            }
+            String petName = values.get("petName");
+            if (petName != null && !petName.isEmpty()) {
+                PetRecord pet = new PetRecord();
+                pet.setName(petName);
+                pet.setBirthDate(values.get("petBirthDate"));
+                pet.setType(values.get("petType"));
+                owner.owner().getPets().add(pet);
+            }
+        }
+        if (owner != null) {
+            handler.accept(owner);
+        }
+    }
+
+    /**
+     * Fields of a CSV line, quotes removed
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    interface RowHandler {
+        void accept(Row row) throws IOException;
+    }
+
+    /**
+     * An owner read from the given line, or the error that prevented reading it
+     */
+    record Row(int line, OwnerRecord owner, String error) {
+    }
+
+    @Data
+    static class OwnerRecord {
+        private String firstName;
+        private String lastName;
+        private String address;
+        private String city;
+        private String telephone;
+        private List<PetRecord> pets = new ArrayList<>();
+    }
+
+    @Data
+    static class PetRecord {
+        private String name;
+        /**
+         * yyyy-MM-dd
+         */
+        private String birthDate;
+        /**
+         * Name or id of the pet type
+         */
+        private String type;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.Pet;
+import org.springframework.samples.petclinic.customers.model.PetType;
+import org.springframework.samples.petclinic.customers.model.PetTypeCache;
+import org.springframework.samples.petclinic.customers.web.OwnerImportReader.OwnerRecord;
+import org.springframework.samples.petclinic.customers.web.OwnerImportReader.PetRecord;
+import org.springframework.samples.petclinic.customers.web.OwnerImportReader.Row;
+import org.springframework.transaction.TransactionException;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Bulk import of owners with their pets, read as a stream in the {@link OwnerImportReader formats}
+ * NDJSON or CSV, for the onboarding of a whole clinic.
+ * <p>
+ * Valid owners are inserted by chunks of {@code customers.import.chunk-size}, each chunk in its own
+ * transaction. The response is NDJSON as well, written while importing: a line per rejected owner with
+ * its line number and errors, a progress line after each chunk, and a last line with {@code "done":true}.
+ * A chunk failing in the database is rolled back as a whole and its owners reported as rejected.
+ */
+@RestController
+@Timed("petclinic.owner.import")
+@Slf4j
+class OwnerImportResource {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final OwnerRepository ownerRepository;
+
+    private final PetTypeCache petTypeCache;
+
+    private final Validator validator;
+
+    private final ObjectMapper objectMapper;
+
+    private final int chunkSize;
+
+    OwnerImportResource(OwnerRepository ownerRepository, PetTypeCache petTypeCache, Validator validator,
+                        ObjectMapper objectMapper, @Value("${customers.import.chunk-size:1000}") int chunkSize) {
+        this.ownerRepository = ownerRepository;
+        this.petTypeCache = petTypeCache;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    @PostMapping(value = "/owners/import", consumes = NDJSON, produces = NDJSON)
+    public void importNdjson(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Import owners = new Import(response);
+        OwnerImportReader.readNdjson(reader(request), objectMapper, owners::add);
+        owners.finish();
+    }
+
+    @PostMapping(value = "/owners/import", consumes = "text/csv", produces = NDJSON)
+    public void importCsv(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Import owners = new Import(response);
+        OwnerImportReader.readCsv(reader(request), owners::add);
+        owners.finish();
+    }
+
+    private BufferedReader reader(HttpServletRequest request) throws IOException {
+        Charset charset = request.getCharacterEncoding() != null
+            ? Charset.forName(request.getCharacterEncoding())
+            : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(request.getInputStream(), charset));
+    }
+
+    /**
+     * @return the owner with its pets, or {@code null} with the errors added
+     */
+    private Owner toOwner(OwnerRecord record, List<String> errors) {
+        Owner owner = new Owner();
+        owner.setFirstName(record.getFirstName());
+        owner.setLastName(record.getLastName());
+        owner.setAddress(record.getAddress());
+        owner.setCity(record.getCity());
+        owner.setTelephone(record.getTelephone());
+        for (ConstraintViolation<Owner> violation : validator.validate(owner)) {
+            errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        for (int i = 0; i < record.getPets().size(); i++) {
+            PetRecord petRecord = record.getPets().get(i);
+            String path = "pets[" + i + "].";
+            Pet pet = new Pet();
+            if (!StringUtils.hasText(petRecord.getName())) {
+                errors.add(path + "name: must not be blank");
+            }
+            pet.setName(petRecord.getName());
+            if (petRecord.getBirthDate() != null && !petRecord.getBirthDate().isEmpty()) {
+                try {
+                    // midnight UTC, as the dates of the pet form
+                    pet.setBirthDate(Date.from(LocalDate.parse(petRecord.getBirthDate()).atStartOfDay(ZoneOffset.UTC).toInstant()));
+                } catch (DateTimeParseException e) {
+                    errors.add(path + "birthDate: must be a yyyy-MM-dd date");
+                }
+            }
+            Optional<PetType> type = petType(petRecord.getType());
+            if (type.isEmpty()) {
+                errors.add(path + "type: unknown pet type " + petRecord.getType());
+            }
+            type.ifPresent(pet::setType);
+            owner.addPet(pet);
+        }
+        return errors.isEmpty() ? owner : null;
+    }
+
+    private Optional<PetType> petType(String type) {
+        if (type == null || type.isEmpty()) {
+            return Optional.empty();
+        }
+        if (type.chars().allMatch(Character::isDigit) && type.length() < 10) {
+            return petTypeCache.findById(Integer.parseInt(type));
+        }
+        return petTypeCache.findByName(type);
+    }
+
+    /**
+     * State of an import in progress, the owners of the current chunk and the counts so far.
+     */
+    private class Import {
+
+        private final OutputStream out;
+
+        private final List<Owner> owners = new ArrayList<>();
+
+        private final List<Integer> lines = new ArrayList<>();
+
+        private long imported;
+
+        private long rejected;
+
+        Import(HttpServletResponse response) throws IOException {
+            response.setContentType(NDJSON);
+            this.out = response.getOutputStream();
+        }
+
+        void add(Row row) throws IOException {
+            List<String> errors = new ArrayList<>();
+            Owner owner = row.error() != null ? null : toOwner(row.owner(), errors);
+            if (owner == null) {
+                reject(row.line(), row.error() != null ? List.of(row.error()) : errors);
+                return;
+            }
+            owners.add(owner);
+            lines.add(row.line());
+            if (owners.size() >= chunkSize) {
+                insertChunk();
+                write(new Progress(imported, rejected, false));
+                out.flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (!owners.isEmpty()) {
+                insertChunk();
+            }
+            write(new Progress(imported, rejected, true));
+            log.info("Imported {} owners, rejected {}", imported, rejected);
+        }
+
+        private void insertChunk() throws IOException {
+            try {
+                ownerRepository.insertAll(owners);
+                imported += owners.size();
+            } catch (DataAccessException | TransactionException e) {
+                log.warn("Import of the owners of lines {} to {} rolled back", lines.get(0), lines.get(lines.size() - 1), e);
+                String error = "rolled back with the owners of lines " + lines.get(0) + " to " + lines.get(lines.size() - 1)
+                    + ": " + e.getMostSpecificCause().getMessage();
+                for (int line : lines) {
+                    reject(line, List.of(error));
+                }
+            }
+            owners.clear();
+            lines.clear();
+        }
+
+        private void reject(int line, List<String> errors) throws IOException {
+            rejected++;
+            write(new Rejected(line, errors));
+        }
+
+        private void write(Object value) throws IOException {
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+        }
+    }
+
+    record Rejected(int line, List<String> errors) {
+    }
+
+    record Progress(long imported, long rejected, boolean done) {
+    }
+}
@@ -17,16 +17,25 @@ package org.springframework.samples.petclinic.customers.web;
 
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
 import org.springframework.http.HttpStatus;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.OwnerSummary;
+import org.springframework.samples.petclinic.customers.model.PetRepository;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @author Juergen Hoeller
@@ -44,6 +53,12 @@ class OwnerResource {
 
     private final OwnerRepository ownerRepository;
 
+    private final PetRepository petRepository;
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
     /**
      * Create Owner
      */
@@ -58,15 +73,80 @@ class OwnerResource {
      */
     @GetMapping(value = "/{ownerId}")
     public Optional<Owner> findOwner(@PathVariable("ownerId") @Min(1) int ownerId) {
-        return ownerRepository.findById(ownerId);
+        return ownerRepository.findWithPetsById(ownerId);
+    }
+
+    /**
+     * Read the version of an Owner and the identifiers of its pets, for conditional requests
+     */
+    @GetMapping(value = "/{ownerId}/version")
+    public OwnerVersion findOwnerVersion(@PathVariable("ownerId") @Min(1) int ownerId) {
+        int version = ownerRepository.findVersionById(ownerId)
+            .orElseThrow(() -> new ResourceNotFoundException("Owner " + ownerId + " not found"));
+        return new OwnerVersion(version, petRepository.findIdsByOwnerId(ownerId));
+    }
+
+    /**
+     * Read List of Owners, optionally those whose last name starts with a prefix. Unpaged, as this
+     * endpoint has always been: pages are requested with {@code size} or {@code after}.
+     */
+    @GetMapping(params = {"!ids", "!size", "!after"})
+    public List<Owner> findAll(@RequestParam(value = "lastName", required = false) String lastName) {
+        return lastName == null ? ownerRepository.findAll() : ownerRepository.findByLastNameStartingWith(lastName);
     }
 
     /**
-     * Read List of Owners
+     * Read a page of Owners sorted by last name, optionally those whose last name starts with a prefix.
+     * The next page is read from the key of the last owner of this one, given as {@code next}, so that a
+     * deep page costs as much as the first one.
+     *
+     * @param fields the owner fields to return, all of them by default. The pets are only loaded when
+     *               requested.
      */
-    @GetMapping
-    public List<Owner> findAll() {
-        return ownerRepository.findAll();
+    @GetMapping(params = {"size", "!ids"})
+    public Owners findPage(@RequestParam(value = "lastName", defaultValue = "") String lastName,
+                           @RequestParam(value = "after", required = false) String after,
+                           @RequestParam("size") int size,
+                           @RequestParam(value = "fields", required = false) List<String> fields) {
+        final OwnerCursor cursor = after == null ? OwnerCursor.FIRST : OwnerCursor.decode(after);
+        final String pattern = EscapeCharacter.DEFAULT.escape(lastName) + "%";
+        final int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // one more owner than the page size tells whether there is a next page
+        List<OwnerSummary> owners = ownerRepository.findSummaryPageByLastName(
+            pattern, cursor.lastName(), cursor.id(), PageRequest.ofSize(pageSize + 1));
+        String next = null;
+        if (owners.size() > pageSize) {
+            owners = owners.subList(0, pageSize);
+            OwnerSummary last = owners.get(pageSize - 1);
+            next = new OwnerCursor(last.getLastName(), last.getId()).encode();
+        }
+        if (fields != null && !fields.contains("pets")) {
+            return new Owners(owners, next);
+        }
+        // the pets of the whole page in a second query, instead of one query per owner
+        Map<Integer, Owner> withPets = ownerRepository.findAllWithPetsByIdIn(owners.stream().map(OwnerSummary::getId).toList())
+            .stream()
+            .collect(Collectors.toMap(Owner::getId, Function.identity()));
+        return new Owners(owners.stream().map(owner -> withPets.get(owner.getId())).filter(Objects::nonNull).toList(), next);
+    }
+
+    /**
+     * Read the page of Owners after a cursor, {@value #DEFAULT_PAGE_SIZE} owners when no size is given
+     */
+    @GetMapping(params = {"after", "!size", "!ids"})
+    public Owners findPageAfter(@RequestParam(value = "lastName", defaultValue = "") String lastName,
+                                @RequestParam("after") String after,
+                                @RequestParam(value = "fields", required = false) List<String> fields) {
+        return findPage(lastName, after, DEFAULT_PAGE_SIZE, fields);
+    }
+
+    /**
+     * Read List of Owners by their identifiers. Combined with the paging parameters, no mapping matches and
+     * the request is rejected as a bad request.
+     */
+    @GetMapping(params = {"ids", "!size", "!after"})
+    public List<Owner> findAllById(@RequestParam("ids") List<Integer> ownerIds) {
+        return ownerRepository.findAllWithPetsByIdIn(ownerIds);
     }
 
     /**
@@ -87,4 +167,13 @@ class OwnerResource {
         log.info("Saving owner {}", ownerModel);
         ownerRepository.save(ownerModel);
     }
+
+    @Value
+    static class Owners {
+        List<?> items;
+        /**
+         * Cursor of the next page, {@code null} on the last page
+         */
+        String next;
+    }
 }
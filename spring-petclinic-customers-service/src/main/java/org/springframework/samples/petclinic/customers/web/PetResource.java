@@ -20,6 +20,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.samples.petclinic.customers.model.*;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.constraints.Min;
@@ -41,15 +42,17 @@ class PetResource {
 
     private final PetRepository petRepository;
     private final OwnerRepository ownerRepository;
+    private final PetTypeCache petTypeCache;
 
 
     @GetMapping("/petTypes")
     public List<PetType> getPetTypes() {
-        return petRepository.findPetTypes();
+        return petTypeCache.findAll();
     }
 
     @PostMapping("/owners/{ownerId}/pets")
     @ResponseStatus(HttpStatus.CREATED)
+    @Transactional
     public Pet processCreationForm(
         @RequestBody PetRequest petRequest,
         @PathVariable("ownerId") @Min(1) int ownerId) {
@@ -64,6 +67,7 @@ class PetResource {
 
     @PutMapping("/owners/*/pets/{petId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void processUpdateForm(@RequestBody PetRequest petRequest) {
         int petId = petRequest.getId();
         Pet pet = findPetById(petId);
@@ -75,16 +79,20 @@ class PetResource {
         pet.setName(petRequest.getName());
         pet.setBirthDate(petRequest.getBirthDate());
 
-        petRepository.findPetTypeById(petRequest.getTypeId())
+        petTypeCache.findById(petRequest.getTypeId())
             .ifPresent(pet::setType);
 
         log.info("Saving pet {}", pet);
-        return petRepository.save(pet);
+        Pet saved = petRepository.save(pet);
+        ownerRepository.incrementVersion(pet.getOwner());
+        return saved;
     }
 
     @GetMapping("owners/*/pets/{petId}")
     public PetDetails findPet(@PathVariable("petId") int petId) {
-        return new PetDetails(findPetById(petId));
+        return petRepository.findWithOwnerById(petId)
+            .map(PetDetails::new)
+            .orElseThrow(() -> new ResourceNotFoundException("Pet " + petId + " not found"));
     }
 
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import java.util.List;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.samples.petclinic.customers.model.PetType;
+import org.springframework.samples.petclinic.customers.model.PetTypeCache;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/pettypes}: the cached pet types, reloaded from the database with a POST once the
+ * types table changed.
+ */
+@Component
+@Endpoint(id = "pettypes")
+@RequiredArgsConstructor
+class PetTypesEndpoint {
+
+    private final PetTypeCache petTypeCache;
+
+    @ReadOperation
+    public List<PetType> petTypes() {
+        return petTypeCache.findAll();
+    }
+
+    @WriteOperation
+    public int refresh() {
+        return petTypeCache.refresh();
+    }
+}
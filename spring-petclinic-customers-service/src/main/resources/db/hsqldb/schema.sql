@@ -1,6 +1,8 @@
 DROP TABLE pets IF EXISTS;
 DROP TABLE types IF EXISTS;
 DROP TABLE owners IF EXISTS;
+DROP SEQUENCE pets_seq IF EXISTS;
+DROP SEQUENCE owners_seq IF EXISTS;
 
 CREATE TABLE types (
   id   INTEGER IDENTITY PRIMARY KEY,
@@ -14,9 +16,12 @@ CREATE TABLE owners (
   last_name  VARCHAR(30),
   address    VARCHAR(255),
   city       VARCHAR(80),
-  telephone  VARCHAR(12)
+  telephone  VARCHAR(12),
+  version    INTEGER DEFAULT 0 NOT NULL
 );
 CREATE INDEX owners_last_name ON owners (last_name);
+-- ids are allocated by blocks of 50, above the ids of data.sql
+CREATE SEQUENCE owners_seq START WITH 100 INCREMENT BY 50;
 
 CREATE TABLE pets (
   id         INTEGER IDENTITY PRIMARY KEY,
@@ -28,3 +33,4 @@ CREATE TABLE pets (
 ALTER TABLE pets ADD CONSTRAINT fk_pets_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
 ALTER TABLE pets ADD CONSTRAINT fk_pets_types FOREIGN KEY (type_id) REFERENCES types (id);
 CREATE INDEX pets_name ON pets (name);
+CREATE SEQUENCE pets_seq START WITH 100 INCREMENT BY 50;
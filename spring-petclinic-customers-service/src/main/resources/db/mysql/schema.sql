@@ -16,9 +16,27 @@ CREATE TABLE IF NOT EXISTS owners (
   address VARCHAR(255),
   city VARCHAR(80),
   telephone VARCHAR(20),
+  version INT(4) UNSIGNED NOT NULL DEFAULT 0,
   INDEX(last_name)
 ) engine=InnoDB;
 
+-- upgrade of a database created before the owner version, MySQL 5.7 has no ADD COLUMN IF NOT EXISTS
+SET @add_owners_version = IF(
+  (SELECT COUNT(*) FROM information_schema.columns
+   WHERE table_schema = DATABASE() AND table_name = 'owners' AND column_name = 'version') = 0,
+  'ALTER TABLE owners ADD COLUMN version INT(4) UNSIGNED NOT NULL DEFAULT 0',
+  'DO 0');
+PREPARE add_owners_version FROM @add_owners_version;
+EXECUTE add_owners_version;
+DEALLOCATE PREPARE add_owners_version;
+
+-- sequence emulated by Hibernate, ids are allocated by blocks of 50 above the existing ones. Seeded once:
+-- an aggregate always returns a row, the NOT EXISTS condition has to filter a single row from DUAL
+CREATE TABLE IF NOT EXISTS owners_seq (
+  next_val BIGINT
+) engine=InnoDB;
+INSERT INTO owners_seq SELECT (SELECT COALESCE(MAX(id), 0) + 100 FROM owners) FROM DUAL WHERE NOT EXISTS (SELECT * FROM owners_seq);
+
 CREATE TABLE IF NOT EXISTS pets (
   id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
   name VARCHAR(30),
@@ -29,3 +47,8 @@ CREATE TABLE IF NOT EXISTS pets (
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (type_id) REFERENCES types(id)
 ) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS pets_seq (
+  next_val BIGINT
+) engine=InnoDB;
+INSERT INTO pets_seq SELECT (SELECT COALESCE(MAX(id), 0) + 100 FROM pets) FROM DUAL WHERE NOT EXISTS (SELECT * FROM pets_seq);
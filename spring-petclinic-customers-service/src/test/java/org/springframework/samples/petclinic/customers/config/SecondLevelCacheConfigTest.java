@@ -0,0 +1,101 @@
+package org.springframework.samples.petclinic.customers.config;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.Pet;
+import org.springframework.samples.petclinic.customers.model.PetRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "customers.cache.enabled=true",
+    "spring.jpa.properties.hibernate.generate_statistics=true"})
+@ActiveProfiles("test")
+class SecondLevelCacheConfigTest {
+
+    @Autowired
+    OwnerRepository ownerRepository;
+
+    @Autowired
+    PetRepository petRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void clearStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void shouldReadOwnersFromTheCacheOnceLoaded() {
+        entityManagerFactory.getCache().evict(Owner.class);
+
+        ownerRepository.findById(2).orElseThrow();
+        long statements = statistics.getPrepareStatementCount();
+        Owner owner = ownerRepository.findById(2).orElseThrow();
+
+        assertEquals("Davis", owner.getLastName());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getDomainDataRegionStatistics("owners").getHitCount());
+        assertTrue(meterRegistry.get("cache.gets").tags("cache", "owners", "result", "hit").functionCounter().count() >= 1);
+    }
+
+    @Test
+    void shouldLoadOwnersWithTheirPetsFromTheDatabase() {
+        entityManagerFactory.getCache().evictAll();
+
+        Owner owner = ownerRepository.findWithPetsById(6).orElseThrow();
+
+        assertEquals(List.of("Max", "Samantha"), owner.getPets().stream().map(Pet::getName).toList());
+        assertEquals(1, ownerRepository.findAllWithPetsByIdIn(List.of(6)).size());
+    }
+
+    @Test
+    void shouldCacheThePetTypeQueries() {
+        petRepository.findPetTypes();
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals(6, petRepository.findPetTypes().size());
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getQueryRegionStatistics("pet-type-queries").getHitCount() >= 1);
+    }
+
+    @Test
+    void shouldUpdateOnlyTheOwnerWhoseVersionIsIncremented() {
+        ownerRepository.findById(4).orElseThrow();
+        int version = ownerRepository.findById(3).orElseThrow().getVersion();
+
+        transactionTemplate.executeWithoutResult(status ->
+            ownerRepository.incrementVersion(ownerRepository.findById(3).orElseThrow()));
+
+        assertTrue(entityManagerFactory.getCache().contains(Owner.class, 4));
+        Owner owner = ownerRepository.findById(3).orElseThrow();
+        assertEquals(version + 1, owner.getVersion());
+
+        owner.setCity("Madison");
+        assertEquals(version + 2, ownerRepository.save(owner).getVersion());
+    }
+}
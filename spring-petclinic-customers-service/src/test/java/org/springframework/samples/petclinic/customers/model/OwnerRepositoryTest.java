@@ -0,0 +1,119 @@
+package org.springframework.samples.petclinic.customers.model;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.TestTransaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+class OwnerRepositoryTest {
+
+    @Autowired
+    OwnerRepository ownerRepository;
+
+    @Autowired
+    PetRepository petRepository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void clearStatistics() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+            .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void shouldIncrementTheVersionOfAnOwnerOnCommit() {
+        int version = ownerRepository.findVersionById(9).orElseThrow();
+
+        ownerRepository.incrementVersion(ownerRepository.findById(9).orElseThrow());
+        assertEquals(Optional.of(version), ownerRepository.findVersionById(9));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+
+        assertEquals(Optional.of(version + 1), ownerRepository.findVersionById(9));
+        assertEquals(Optional.empty(), ownerRepository.findVersionById(999));
+    }
+
+    @Test
+    void shouldFindThePetIdsOfAnOwner() {
+        assertEquals(List.of(3, 4), petRepository.findIdsByOwnerId(3));
+    }
+
+    @Test
+    void shouldReadOwnersByLastNameAfterAKey() {
+        List<OwnerSummary> davis = ownerRepository.findSummaryPageByLastName("Da%", "", 0, PageRequest.ofSize(1));
+        assertEquals(List.of(2), davis.stream().map(OwnerSummary::getId).toList());
+
+        davis = ownerRepository.findSummaryPageByLastName("Da%", "Davis", 2, PageRequest.ofSize(5));
+        assertEquals(List.of(4), davis.stream().map(OwnerSummary::getId).toList());
+
+        List<OwnerSummary> owners = ownerRepository.findSummaryPageByLastName("%", "Davis", 2, PageRequest.ofSize(3));
+        assertEquals(List.of("Davis", "Escobito", "Estaban"), owners.stream().map(OwnerSummary::getLastName).toList());
+    }
+
+    @Test
+    void shouldMatchLastNamePrefixLiterally() {
+        assertEquals(List.of(), ownerRepository.findSummaryPageByLastName("D\\_vis%", "", 0, PageRequest.ofSize(5)));
+    }
+
+    @Test
+    void shouldLoadOwnersWithPetsAndTypesInASingleQuery() {
+        List<Owner> owners = ownerRepository.findAllWithPetsByIdIn(List.of(1, 2, 3, 4, 5, 6));
+        assertEquals(6, owners.size());
+        assertEquals(8, owners.stream().mapToLong(owner -> owner.getPets().stream().map(pet -> pet.getType().getName()).count()).sum());
+
+        Owner owner = ownerRepository.findWithPetsById(10).orElseThrow();
+        assertEquals(List.of("Lucky", "Sly"), owner.getPets().stream().map(Pet::getName).toList());
+        owner.getPets().forEach(pet -> pet.getType().getName());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void shouldLoadAllOwnersWithPetsAndTypesInASingleQuery() {
+        List<Owner> owners = ownerRepository.findAll();
+        assertEquals(10, owners.size());
+        assertEquals(13, owners.stream().mapToLong(owner -> owner.getPets().stream().map(pet -> pet.getType().getName()).count()).sum());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void shouldLoadOwnersByLastNameWithPetsAndTypesInASingleQuery() {
+        List<Owner> davis = ownerRepository.findByLastNameStartingWith("Davis");
+        assertEquals(List.of(2, 4), davis.stream().map(Owner::getId).sorted().toList());
+        assertEquals(List.of("hamster", "lizard"), davis.stream()
+            .flatMap(owner -> owner.getPets().stream().map(pet -> pet.getType().getName()))
+            .sorted().toList());
+        assertEquals(List.of(), ownerRepository.findByLastNameStartingWith("D_vis"));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void shouldLoadAPetWithItsOwnerInASingleQuery() {
+        Pet pet = petRepository.findWithOwnerById(7).orElseThrow();
+        assertEquals("Samantha", pet.getName());
+        assertEquals("cat", pet.getType().getName());
+        assertEquals("Coleman", pet.getOwner().getLastName());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,76 @@
+package org.springframework.samples.petclinic.customers.model;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class PetTypeCacheTest {
+
+    @Mock
+    PetRepository petRepository;
+
+    PetTypeCache petTypeCache;
+
+    PetType bird = petType(5, "bird");
+
+    PetType cat = petType(1, "cat");
+
+    @BeforeEach
+    void preload() {
+        given(petRepository.findPetTypes()).willReturn(List.of(bird, cat));
+        petTypeCache = new PetTypeCache(petRepository);
+        petTypeCache.afterSingletonsInstantiated();
+    }
+
+    @Test
+    void shouldServeTheTypesWithoutTheDatabase() {
+        assertEquals(List.of(bird, cat), petTypeCache.findAll());
+        assertSame(cat, petTypeCache.findById(1).orElseThrow());
+        assertSame(bird, petTypeCache.findById(5).orElseThrow());
+
+        verify(petRepository, never()).findPetTypeById(1);
+        verify(petRepository, never()).findPetTypeById(5);
+    }
+
+    @Test
+    void shouldLookUpTypesCreatedSinceTheLastRefresh() {
+        PetType dog = petType(2, "dog");
+        given(petRepository.findPetTypeById(2)).willReturn(Optional.of(dog));
+        assertSame(dog, petTypeCache.findById(2).orElseThrow());
+
+        given(petRepository.findPetTypes()).willReturn(List.of(bird, cat, dog));
+        assertEquals(3, petTypeCache.refresh());
+        assertEquals(List.of(bird, cat, dog), petTypeCache.findAll());
+        assertSame(dog, petTypeCache.findById(2).orElseThrow());
+        verify(petRepository).findPetTypeById(2);
+    }
+
+    @Test
+    void shouldServeTypesWithSequenceIds() {
+        PetType ferret = petType(1_000_050, "ferret");
+        given(petRepository.findPetTypes()).willReturn(List.of(bird, cat, ferret));
+
+        assertEquals(3, petTypeCache.refresh());
+        assertSame(ferret, petTypeCache.findById(1_000_050).orElseThrow());
+        verify(petRepository, never()).findPetTypeById(1_000_050);
+    }
+
+    private static PetType petType(int id, String name) {
+        PetType petType = new PetType();
+        petType.setId(id);
+        petType.setName(name);
+        return petType;
+    }
+}
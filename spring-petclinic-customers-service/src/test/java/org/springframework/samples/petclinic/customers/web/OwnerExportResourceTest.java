@@ -0,0 +1,104 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "customers.import.chunk-size=50",
+    "spring.jpa.properties.hibernate.generate_statistics=true"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class OwnerExportResourceTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void shouldExportOwnersWithTheirPetsAsNdjsonInASingleQuery() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<JsonNode> owners = export("application/x-ndjson").lines().map(this::readTree).toList();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        DistributionSummary statements = meterRegistry.get("petclinic.db.statements")
+            .tags("method", "GET", "uri", "/owners/export").summary();
+        assertTrue(statements.count() >= 1);
+        assertEquals(statements.count(), (long) statements.totalAmount());
+        assertEquals("{\"id\":1,\"firstName\":\"George\",\"lastName\":\"Franklin\",\"address\":\"110 W. Liberty St.\","
+            + "\"city\":\"Madison\",\"telephone\":\"6085551023\","
+            + "\"pets\":[{\"id\":1,\"name\":\"Leo\",\"birthDate\":\"2010-09-07\",\"type\":\"cat\"}]}", owners.get(0).toString());
+        assertEquals(List.of("Jewel", "Rosy"), owners.get(2).get("pets").findValuesAsText("name").stream().sorted().toList());
+        for (int i = 1; i < owners.size(); i++) {
+            assertTrue(owners.get(i - 1).get("id").asInt() < owners.get(i).get("id").asInt());
+        }
+    }
+
+    @Test
+    void shouldExportCsvThatCanBeImportedBack() throws Exception {
+        String csv = export("text/csv");
+
+        List<String> lines = csv.lines().toList();
+        assertEquals("id,firstName,lastName,address,city,telephone,petId,petName,petBirthDate,petType", lines.get(0));
+        assertEquals("1,George,Franklin,110 W. Liberty St.,Madison,6085551023,1,Leo,2010-09-07,cat", lines.get(1));
+        long owners = lines.stream().skip(1).map(line -> line.substring(0, line.indexOf(','))).distinct().count();
+
+        String response = mvc.perform(post("/owners/import").contentType("text/csv").content(csv))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+
+        assertEquals("{\"imported\":" + owners + ",\"rejected\":0,\"done\":true}", response.strip());
+    }
+
+    @Test
+    void shouldQuoteCsvFieldsOnlyWhenNeeded() {
+        assertEquals("", OwnerExportResource.csv(null));
+        assertEquals("Madison", OwnerExportResource.csv("Madison"));
+        assertEquals("\"1 Navy Yard, Bldg 2\"", OwnerExportResource.csv("1 Navy Yard, Bldg 2"));
+        assertEquals("\"the \"\"Doc\"\"\"", OwnerExportResource.csv("the \"Doc\""));
+    }
+
+    private String export(String accept) throws Exception {
+        return mvc.perform(get("/owners/export").accept(accept))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(accept))
+            .andReturn().getResponse().getContentAsString();
+    }
+
+    private JsonNode readTree(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
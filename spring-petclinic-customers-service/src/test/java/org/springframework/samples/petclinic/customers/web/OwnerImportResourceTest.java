@@ -0,0 +1,131 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.OwnerSummary;
+import org.springframework.samples.petclinic.customers.model.Pet;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "customers.import.chunk-size=50",
+    "spring.jpa.properties.hibernate.generate_statistics=true"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class OwnerImportResourceTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    OwnerRepository ownerRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void shouldImportValidOwnersAndReportTheOthers() throws Exception {
+        String ndjson = """
+            {"firstName":"Ada","lastName":"Lovelace","address":"12 St James's Sq.","city":"London","telephone":"2079460000","pets":[{"name":"Puck","birthDate":"2019-05-01","type":"Dog"},{"name":"Ink","type":"1"}]}
+            {"firstName":"Charles","lastName":"","address":"1 Dorset St.","city":"London","telephone":"not a number"}
+
+            {"firstName":"Mary",
+            {"firstName":"Alan","lastName":"Turing","address":"Hollymeade","city":"Wilmslow","telephone":"1625000000","pets":[{"name":"Porgy","type":"teddy bear"}]}
+            """;
+
+        List<JsonNode> lines = importOwners("application/x-ndjson", ndjson);
+
+        assertEquals(4, lines.size());
+        assertEquals(2, lines.get(0).get("line").asInt());
+        assertEquals(List.of("lastName: must not be blank", "telephone: numeric value out of bounds (<12 digits>.<0 digits> expected)"),
+            objectMapper.convertValue(lines.get(0).get("errors"), List.class).stream().sorted().toList());
+        assertEquals(4, lines.get(1).get("line").asInt());
+        assertTrue(lines.get(1).get("errors").get(0).asText().startsWith("invalid JSON"));
+        assertEquals("pets[0].type: unknown pet type teddy bear", lines.get(2).get("errors").get(0).asText());
+        assertEquals("{\"imported\":1,\"rejected\":3,\"done\":true}", lines.get(3).toString());
+
+        Owner ada = ownerRepository.findWithPetsById(idOf("Lovelace")).orElseThrow();
+        assertEquals(List.of("Ink", "Puck"), ada.getPets().stream().map(Pet::getName).toList());
+        assertEquals(List.of("cat", "dog"), ada.getPets().stream().map(pet -> pet.getType().getName()).toList());
+    }
+
+    @Test
+    void shouldImportCsvLinesOfTheSameOwnerAsASingleOwner() throws Exception {
+        String csv = """
+            firstName,lastName,address,city,telephone,petName,petBirthDate,petType
+            Grace,Hopper,"1 Navy Yard, Bldg 2",Arlington,7035550100,Bug,2018-09-09,bird
+            Grace,Hopper,"1 Navy Yard, Bldg 2",Arlington,7035550100,Cobol,,snake
+            Edsger,Dijkstra,Plataanstraat 5,Nuenen,4025550100,,,
+            Barbara,Liskov,"unterminated,Boston,6175550100,,,
+            """;
+
+        List<JsonNode> lines = importOwners("text/csv", csv);
+
+        assertEquals("{\"line\":5,\"errors\":[\"expected 8 fields\"]}", lines.get(0).toString());
+        assertEquals("{\"imported\":2,\"rejected\":1,\"done\":true}", lines.get(1).toString());
+        Owner grace = ownerRepository.findWithPetsById(idOf("Hopper")).orElseThrow();
+        assertEquals("1 Navy Yard, Bldg 2", grace.getAddress());
+        assertEquals(List.of("Bug", "Cobol"), grace.getPets().stream().map(Pet::getName).toList());
+        assertEquals(0, ownerRepository.findWithPetsById(idOf("Dijkstra")).orElseThrow().getPets().size());
+    }
+
+    @Test
+    void shouldInsertByBatches() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            ndjson.append("{\"firstName\":\"Owner\",\"lastName\":\"Batch").append(i)
+                .append("\",\"address\":\"1 Main St.\",\"city\":\"Madison\",\"telephone\":\"6085550000\",")
+                .append("\"pets\":[{\"name\":\"Pet\",\"type\":\"cat\"}]}\n");
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<JsonNode> lines = importOwners("application/x-ndjson", ndjson.toString());
+
+        assertEquals("{\"imported\":50,\"rejected\":0,\"done\":false}", lines.get(0).toString());
+        assertEquals("{\"imported\":100,\"rejected\":0,\"done\":false}", lines.get(1).toString());
+        assertEquals("{\"imported\":120,\"rejected\":0,\"done\":true}", lines.get(2).toString());
+        assertEquals(240, statistics.getEntityInsertCount());
+        // per chunk, a sequence call and an insert batch for the owners, the same for the pets
+        assertTrue(statistics.getPrepareStatementCount() <= 3 * 4, statistics.getPrepareStatementCount() + " statements");
+    }
+
+    private List<JsonNode> importOwners(String contentType, String body) throws Exception {
+        String response = mvc.perform(post("/owners/import").contentType(contentType).content(body))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        return response.lines().map(line -> {
+            try {
+                return objectMapper.readTree(line);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toList();
+    }
+
+    private int idOf(String lastName) {
+        List<OwnerSummary> owners = ownerRepository.findSummaryPageByLastName(lastName, "", 0, PageRequest.ofSize(2));
+        assertEquals(1, owners.size());
+        return owners.get(0).getId();
+    }
+}
@@ -0,0 +1,99 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.OwnerSummary;
+import org.springframework.samples.petclinic.customers.model.PetRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(OwnerResource.class)
+@ActiveProfiles("test")
+class OwnerResourceTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @MockBean
+    OwnerRepository ownerRepository;
+
+    @MockBean
+    PetRepository petRepository;
+
+    @Test
+    void shouldReadOwnerSummariesPageByPage() throws Exception {
+        OwnerSummary betty = new OwnerSummary(2, "Betty", "Davis", "638 Cardinal Ave.", "Sun Prairie", "6085551749");
+        OwnerSummary harold = new OwnerSummary(4, "Harold", "Davis", "563 Friendly St.", "Windsor", "6085553198");
+        given(ownerRepository.findSummaryPageByLastName("Da%", "", 0, PageRequest.ofSize(2)))
+            .willReturn(List.of(betty, harold));
+        given(ownerRepository.findSummaryPageByLastName("Da%", "Davis", 2, PageRequest.ofSize(2)))
+            .willReturn(List.of(harold));
+
+        String next = new OwnerCursor("Davis", 2).encode();
+        mvc.perform(get("/owners?lastName=Da&size=1&fields=id,lastName"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items.length()").value(1))
+            .andExpect(jsonPath("$.items[0].firstName").value("Betty"))
+            .andExpect(jsonPath("$.items[0].pets").doesNotExist())
+            .andExpect(jsonPath("$.next").value(next));
+
+        mvc.perform(get("/owners?lastName=Da&size=1&fields=id,lastName&after=" + next))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].firstName").value("Harold"))
+            .andExpect(jsonPath("$.next").doesNotExist());
+    }
+
+    @Test
+    void shouldReadAllOwnersWithoutPagingParameters() throws Exception {
+        Owner george = new Owner();
+        george.setFirstName("George");
+        given(ownerRepository.findAll()).willReturn(List.of(george));
+
+        mvc.perform(get("/owners"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].firstName").value("George"));
+    }
+
+    @Test
+    void shouldReadTheDefaultPageSizeAfterACursor() throws Exception {
+        given(ownerRepository.findSummaryPageByLastName("%", "Davis", 2, PageRequest.ofSize(21)))
+            .willReturn(List.of());
+
+        mvc.perform(get("/owners?after=" + new OwnerCursor("Davis", 2).encode()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items.length()").value(0));
+    }
+
+    @Test
+    void shouldRejectIdsCombinedWithPaging() throws Exception {
+        mvc.perform(get("/owners?ids=1,2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(0));
+        mvc.perform(get("/owners?ids=1,2&size=1"))
+            .andExpect(status().isBadRequest());
+        mvc.perform(get("/owners?ids=1,2&after=" + new OwnerCursor("Davis", 2).encode()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectAnInvalidCursor() throws Exception {
+        mvc.perform(get("/owners?after=not-a-cursor"))
+            .andExpect(status().isBadRequest());
+    }
+}
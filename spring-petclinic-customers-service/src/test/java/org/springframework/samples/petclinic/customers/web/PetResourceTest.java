@@ -1,23 +1,33 @@
 package org.springframework.samples.petclinic.customers.web;
 
+import java.text.SimpleDateFormat;
 import java.util.Optional;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.customers.config.SmileConfig;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
 import org.springframework.samples.petclinic.customers.model.Pet;
 import org.springframework.samples.petclinic.customers.model.PetRepository;
 import org.springframework.samples.petclinic.customers.model.PetType;
+import org.springframework.samples.petclinic.customers.model.PetTypeCache;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -29,6 +39,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(PetResource.class)
+@Import({SmileConfig.class, PetTypeCache.class})
 @ActiveProfiles("test")
 class PetResourceTest {
 
@@ -46,7 +57,7 @@ class PetResourceTest {
 
         Pet pet = setupPet();
 
-        given(petRepository.findById(2)).willReturn(Optional.of(pet));
+        given(petRepository.findWithOwnerById(2)).willReturn(Optional.of(pet));
 
 
         mvc.perform(get("/owners/2/pets/2").accept(MediaType.APPLICATION_JSON))
@@ -57,6 +68,33 @@ class PetResourceTest {
             .andExpect(jsonPath("$.type.id").value(6));
     }
 
+    @Test
+    void shouldGetAPetInSmileFormatWithTheJsonConfiguration() throws Exception {
+
+        Pet pet = setupPet();
+        pet.setBirthDate(new SimpleDateFormat("yyyy-MM-dd").parse("2012-08-06"));
+
+        given(petRepository.findWithOwnerById(2)).willReturn(Optional.of(pet));
+
+        byte[] smile = mvc.perform(get("/owners/2/pets/2").accept("application/x-jackson-smile"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-jackson-smile"))
+            .andReturn().getResponse().getContentAsByteArray();
+        JsonNode json = new ObjectMapper(new SmileFactory()).readTree(smile);
+        assertEquals("Basil", json.get("name").asText());
+        assertTrue(json.get("birthDate").isTextual());
+    }
+
+    @Test
+    void shouldGetAPetInJsonFormatForAnyMediaType() throws Exception {
+
+        given(petRepository.findWithOwnerById(2)).willReturn(Optional.of(setupPet()));
+
+        mvc.perform(get("/owners/2/pets/2").accept(MediaType.ALL))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/json"));
+    }
+
     private Pet setupPet() {
         Owner owner = new Owner();
         owner.setFirstName("George");
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtest;
+
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process {@link MockWebServer} answering the requests of the gateway in place of a downstream
+ * service, with generated data and a configurable latency and error distribution.
+ * <p>
+ * The response time is the minimum latency plus an exponentially distributed tail. Errors are drawn
+ * independently for each request and answered after the same delay.
+ */
+class DownstreamStandIn extends Dispatcher {
+
+    private static final Pattern OWNER = Pattern.compile("/owners/(\\d+)");
+
+    private static final Pattern PET_VISITS = Pattern.compile("/owners/[^/]+/pets/(\\d+)/visits");
+
+    private static final Pattern SEARCH_PET_IDS = Pattern.compile("\"petIds\":\\[([\\d,]*)]");
+
+    private static final String DESCRIPTION = "Annual checkup, vaccines updated and weight checked";
+
+    private final String serviceId;
+
+    private final long latencyNanos;
+
+    private final double latencyTailNanos;
+
+    private final double errorRate;
+
+    private final int errorStatus;
+
+    private final Function<RecordedRequest, String> responder;
+
+    private final MockWebServer server = new MockWebServer();
+
+    private DownstreamStandIn(String serviceId, LoadTestOptions options, Function<RecordedRequest, String> responder) {
+        this.serviceId = serviceId;
+        this.latencyNanos = options.getLatency(serviceId).toNanos();
+        this.latencyTailNanos = options.getLatencyTail(serviceId).toNanos();
+        this.errorRate = options.getErrorRate(serviceId);
+        this.errorStatus = options.getErrorStatus(serviceId);
+        this.responder = responder;
+        server.setDispatcher(this);
+        if (options.isH2c()) {
+            server.setProtocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+    }
+
+    static DownstreamStandIn create(String serviceId, LoadTestOptions options) {
+        Data data = new Data(options.getPetsPerOwner(), options.getVisitsPerPet());
+        return switch (serviceId) {
+            case "customers-service" -> new DownstreamStandIn(serviceId, options, data::customers);
+            case "visits-service" -> new DownstreamStandIn(serviceId, options, data::visits);
+            case "vets-service" -> new DownstreamStandIn(serviceId, options, data::vets);
+            default -> throw new IllegalArgumentException("No stand-in for " + serviceId);
+        };
+    }
+
+    URI start() throws IOException {
+        server.start();
+        // every request is recorded by the server, drop them to keep the memory flat
+        Thread drain = new Thread(() -> {
+            try {
+                while (true) {
+                    server.takeRequest();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, serviceId + "-drain");
+        drain.setDaemon(true);
+        drain.start();
+        return server.url("/").uri();
+    }
+
+    void stop() throws IOException {
+        server.shutdown();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyNanos + (long) (-latencyTailNanos * Math.log(1 - random.nextDouble()));
+        // waits on the thread of the request, a headers delay would hold the shared connection in HTTP/2
+        LockSupport.parkNanos(delay);
+        MockResponse response;
+        if (random.nextDouble() < errorRate) {
+            response = new MockResponse().setResponseCode(errorStatus);
+        } else {
+            String body = responder.apply(request);
+            response = body == null
+                ? new MockResponse().setResponseCode(404)
+                : new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+        }
+        return response;
+    }
+
+    /**
+     * Disables Nagle's algorithm on the accepted connections, the HTTP/2 frames of a response are small
+     * separate writes that would otherwise wait for the delayed acknowledgement of the gateway.
+     */
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Generated owners, each with the same number of pets, and visits
+     */
+    private record Data(int petsPerOwner, int visitsPerPet) {
+
+        String customers(RecordedRequest request) {
+            String path = request.getRequestUrl().encodedPath();
+            String ids = request.getRequestUrl().queryParameter("ids");
+            if (path.equals("/owners") && ids != null) {
+                StringBuilder json = new StringBuilder("[");
+                for (String id : ids.split(",")) {
+                    appendOwner(json.length() > 1 ? json.append(',') : json, Integer.parseInt(id));
+                }
+                return json.append(']').toString();
+            }
+            Matcher owner = OWNER.matcher(path);
+            return owner.matches() ? appendOwner(new StringBuilder(), Integer.parseInt(owner.group(1))).toString() : null;
+        }
+
+        String visits(RecordedRequest request) {
+            String path = request.getRequestUrl().encodedPath();
+            String petIds = request.getRequestUrl().queryParameter("petId");
+            if (path.equals("/pets/visits") && petIds != null) {
+                String fields = request.getRequestUrl().queryParameter("fields");
+                return visitsOfPets(petIds, fields == null || fields.contains("description"));
+            }
+            if (path.equals("/pets/visits/search")) {
+                String body = request.getBody().readUtf8();
+                Matcher search = SEARCH_PET_IDS.matcher(body);
+                return search.find() ? visitsOfPets(search.group(1), !body.contains("\"fields\":[")) : null;
+            }
+            Matcher petVisits = PET_VISITS.matcher(path);
+            if (petVisits.matches()) {
+                StringBuilder json = new StringBuilder("[");
+                return appendVisits(json, Integer.parseInt(petVisits.group(1)), true).append(']').toString();
+            }
+            return null;
+        }
+
+        private String visitsOfPets(String petIds, boolean descriptions) {
+            StringBuilder json = new StringBuilder("{\"items\":[");
+            for (String petId : petIds.split(",")) {
+                appendVisits(json, Integer.parseInt(petId), descriptions);
+            }
+            return json.append("]}").toString();
+        }
+
+        String vets(RecordedRequest request) {
+            if (!request.getRequestUrl().encodedPath().equals("/vets")) {
+                return null;
+            }
+            return "[{\"id\":1,\"firstName\":\"James\",\"lastName\":\"Carter\",\"specialties\":[]},"
+                + "{\"id\":2,\"firstName\":\"Helen\",\"lastName\":\"Leary\",\"specialties\":[{\"id\":1,\"name\":\"radiology\"}]},"
+                + "{\"id\":3,\"firstName\":\"Linda\",\"lastName\":\"Douglas\",\"specialties\":[{\"id\":2,\"name\":\"surgery\"},{\"id\":3,\"name\":\"dentistry\"}]}]";
+        }
+
+        private StringBuilder appendOwner(StringBuilder json, int ownerId) {
+            json.append("{\"id\":").append(ownerId)
+                .append(",\"firstName\":\"First").append(ownerId)
+                .append("\",\"lastName\":\"Last").append(ownerId)
+                .append("\",\"address\":\"110 W. Liberty St.\",\"city\":\"Madison\",\"telephone\":\"6085551023\",\"pets\":[");
+            for (int i = 0; i < petsPerOwner; i++) {
+                int petId = (ownerId - 1) * petsPerOwner + i + 1;
+                json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(petId)
+                    .append(",\"name\":\"Pet").append(petId)
+                    .append("\",\"birthDate\":\"2020-09-07\",\"type\":{\"id\":1,\"name\":\"cat\"}}");
+            }
+            return json.append("]}");
+        }
+
+        private StringBuilder appendVisits(StringBuilder json, int petId, boolean descriptions) {
+            LocalDate date = LocalDate.of(2023, 1, 1).plusDays(petId % 365);
+            for (int i = 0; i < visitsPerPet; i++) {
+                char last = json.charAt(json.length() - 1);
+                json.append(last == '[' ? "" : ",")
+                    .append("{\"id\":").append((long) petId * visitsPerPet + i)
+                    .append(",\"date\":\"").append(date.plusDays(i))
+                    .append("\",\"petId\":").append(petId);
+                if (descriptions) {
+                    json.append(",\"description\":\"").append(DESCRIPTION).append('"');
+                }
+                json.append('}');
+            }
+            return json;
+        }
+    }
+}
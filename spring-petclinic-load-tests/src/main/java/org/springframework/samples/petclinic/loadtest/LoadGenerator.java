@@ -0,0 +1,201 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Sends requests to the gateway at a fixed arrival rate, an open model where a slow gateway does not
+ * slow down the load.
+ * <p>
+ * The latency of a request is measured from the instant it was scheduled at, not from the instant it
+ * was actually sent, so that a stalled generator or client does not hide the queueing delay
+ * (coordinated omission).
+ */
+class LoadGenerator {
+
+    private final URI gateway;
+
+    private final LoadTestOptions options;
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .build();
+
+    private final List<Target> targets = new ArrayList<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    LoadGenerator(URI gateway, LoadTestOptions options) {
+        this.gateway = gateway;
+        this.options = options;
+        int owners = options.getOwners();
+        int pets = owners * options.getPetsPerOwner();
+        for (Map.Entry<String, Integer> entry : options.getMix().entrySet()) {
+            Function<SplittableRandom, String> path = switch (entry.getKey()) {
+                case "owner-details" -> random -> "api/gateway/owners/" + random.nextInt(1, owners + 1);
+                case "owner" -> random -> "api/customer/owners/" + random.nextInt(1, owners + 1);
+                case "visits" -> random -> "api/visit/owners/*/pets/" + random.nextInt(1, pets + 1) + "/visits";
+                case "vets" -> random -> "api/vet/vets";
+                default -> throw new IllegalArgumentException("Unknown request type " + entry.getKey());
+            };
+            targets.add(new Target(entry.getKey(), entry.getValue(), path));
+        }
+    }
+
+    List<Target> run() {
+        SplittableRandom random = new SplittableRandom(options.getSeed());
+        int totalWeight = targets.stream().mapToInt(Target::getWeight).sum();
+        long period = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        long measureStart = start + options.getWarmup().toNanos();
+        long end = measureStart + options.getDuration().toNanos();
+        for (long intended = start; intended < end; intended += period) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(pick(random, totalWeight), random, intended, intended >= measureStart);
+        }
+        awaitInFlight();
+        return targets;
+    }
+
+    private Target pick(SplittableRandom random, int totalWeight) {
+        int value = random.nextInt(totalWeight);
+        for (Target target : targets) {
+            value -= target.getWeight();
+            if (value < 0) {
+                return target;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void send(Target target, SplittableRandom random, long intended, boolean measured) {
+        HttpRequest request = HttpRequest.newBuilder(gateway.resolve(target.path.apply(random)))
+            .timeout(options.getTimeout())
+            .GET()
+            .build();
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, failure) -> {
+                long latency = System.nanoTime() - intended;
+                inFlight.decrementAndGet();
+                if (measured) {
+                    target.record(latency, error(response, failure));
+                }
+            });
+    }
+
+    /**
+     * @return the status of an error response or the exception of a failed request, {@code null} on success
+     */
+    private static String error(HttpResponse<?> response, Throwable failure) {
+        if (failure != null) {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            return cause.getClass().getSimpleName();
+        }
+        return response.statusCode() >= 400 ? String.valueOf(response.statusCode()) : null;
+    }
+
+    private void awaitInFlight() {
+        long deadline = System.nanoTime() + options.getTimeout().toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    /**
+     * Type of request with its share of the load and its results
+     */
+    static class Target {
+
+        private final String name;
+
+        private final int weight;
+
+        private final Function<SplittableRandom, String> path;
+
+        private final Recorder latencies = new Recorder(3);
+
+        private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+
+        private Histogram histogram;
+
+        Target(String name, int weight, Function<SplittableRandom, String> path) {
+            this.name = name;
+            this.weight = weight;
+            this.path = path;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+
+        long getErrorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        /**
+         * Error count by response status or client exception
+         */
+        Map<String, Long> getErrors() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((error, count) -> counts.put(error, count.sum()));
+            return counts;
+        }
+
+        /**
+         * Latencies of the successful responses in nanoseconds
+         */
+        synchronized Histogram getHistogram() {
+            if (histogram == null) {
+                histogram = latencies.getIntervalHistogram();
+            }
+            return histogram;
+        }
+
+        private void record(long latencyNanos, String error) {
+            if (error == null) {
+                latencies.recordValue(latencyNanos);
+            } else {
+                errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+            }
+        }
+    }
+}
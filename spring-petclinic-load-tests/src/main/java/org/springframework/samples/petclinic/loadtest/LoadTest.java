@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.samples.petclinic.api.ApiGatewayApplication;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test of the api-gateway, started in process against {@link DownstreamStandIn stand-ins} of
+ * customers-service, visits-service and vets-service, without config server nor Eureka.
+ * <p>
+ * The {@link LoadGenerator} sends a mix of owner details and proxied route requests at a fixed
+ * rate, then the latency percentiles and the throughput of each request type are printed. See
+ * {@link LoadTestOptions} for the options, e.g.
+ * {@code --rate=500 --duration=1m --visits-service.latency=20ms --visits-service.error-rate=0.01}.
+ * The rate limiter of the gateway is disabled unless {@code --gateway.rate-limit.enabled=true} is given,
+ * the adaptive concurrency limit of a service unless {@code --gateway.clients.<service id>.concurrency-limit.enabled=true} is.
+ */
+public class LoadTest {
+
+    private static final double MILLIS = 1_000_000.0;
+
+    public static void main(String[] args) throws IOException {
+        LoadTestOptions options = new LoadTestOptions(args);
+        List<DownstreamStandIn> standIns = new ArrayList<>();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.cloud.config.enabled", false);
+        properties.put("eureka.client.enabled", false);
+        properties.put("management.tracing.enabled", false);
+        properties.put("gateway.h2c.enabled", options.isH2c());
+        properties.put("logging.level.root", "WARN");
+        for (String serviceId : LoadTestOptions.SERVICES) {
+            DownstreamStandIn standIn = DownstreamStandIn.create(serviceId, options);
+            URI uri = standIn.start();
+            standIns.add(standIn);
+            properties.put("spring.cloud.discovery.client.simple.instances." + serviceId + "[0].uri", uri.toString());
+        }
+        ConfigurableApplicationContext gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+            .properties(properties)
+            .run(options.getGatewayArgs());
+        try {
+            int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+            System.out.printf("Sending %d requests/s to the gateway for %s after a %s warmup%n",
+                options.getRate(), options.getDuration(), options.getWarmup());
+            List<LoadGenerator.Target> targets = new LoadGenerator(URI.create("http://localhost:" + port + "/"), options).run();
+            report(targets, options);
+        }
+        finally {
+            gateway.close();
+            for (DownstreamStandIn standIn : standIns) {
+                standIn.stop();
+            }
+        }
+    }
+
+    private static void report(List<LoadGenerator.Target> targets, LoadTestOptions options) throws IOException {
+        double seconds = options.getDuration().toNanos() / 1e9;
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        PrintStream out = System.out;
+        out.printf("%n%-14s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+            "request", "ok", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (LoadGenerator.Target target : targets) {
+            Histogram histogram = target.getHistogram();
+            total.add(histogram);
+            totalErrors += target.getErrorCount();
+            printRow(out, target.getName(), histogram, target.getErrorCount(), seconds);
+            writeDistribution(options, target.getName(), histogram);
+        }
+        printRow(out, "total", total, totalErrors, seconds);
+        writeDistribution(options, "total", total);
+        for (LoadGenerator.Target target : targets) {
+            if (!target.getErrors().isEmpty()) {
+                out.printf("%s errors: %s%n", target.getName(), target.getErrors());
+            }
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram histogram, long errors, double seconds) {
+        long count = histogram.getTotalCount();
+        out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, count, errors, (count + errors) / seconds,
+            histogram.getValueAtPercentile(50) / MILLIS,
+            histogram.getValueAtPercentile(90) / MILLIS,
+            histogram.getValueAtPercentile(99) / MILLIS,
+            histogram.getValueAtPercentile(99.9) / MILLIS,
+            histogram.getMaxValue() / MILLIS);
+    }
+
+    /**
+     * Full percentile distribution in milliseconds, readable by the HdrHistogram plotter
+     */
+    private static void writeDistribution(LoadTestOptions options, String name, Histogram histogram) throws IOException {
+        if (options.getOutput() == null) {
+            return;
+        }
+        Path folder = Files.createDirectories(Path.of(options.getOutput()));
+        try (PrintStream out = new PrintStream(Files.newOutputStream(folder.resolve(name + ".hgrm")))) {
+            histogram.outputPercentileDistribution(out, MILLIS);
+        }
+    }
+}
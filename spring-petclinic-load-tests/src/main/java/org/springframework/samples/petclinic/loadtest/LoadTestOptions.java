@@ -0,0 +1,168 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line options of the {@link LoadTest}, given as {@code --name=value}.
+ * <p>
+ * The latency and error options of the stand-ins can be set for all of them or for a single service
+ * with the service id as prefix, e.g. {@code --visits-service.latency=50ms}. Any other option is
+ * passed to the api-gateway, e.g. {@code --gateway.cache.ttl=0s}.
+ */
+class LoadTestOptions {
+
+    static final List<String> SERVICES = List.of("customers-service", "visits-service", "vets-service");
+
+    private static final Set<String> OPTIONS = Set.of("rate", "duration", "warmup", "timeout", "mix", "seed",
+        "owners", "pets-per-owner", "visits-per-pet", "output", "h2c");
+
+    private static final Set<String> SERVICE_OPTIONS = Set.of("latency", "latency-tail", "error-rate", "error-status");
+
+    private final Map<String, String> options = new HashMap<>();
+
+    private final List<String> gatewayArgs = new ArrayList<>();
+
+    LoadTestOptions(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : null;
+            if (name != null && isOption(name)) {
+                options.put(name, arg.substring(equals + 1));
+            } else {
+                gatewayArgs.add(arg);
+            }
+        }
+    }
+
+    private static boolean isOption(String name) {
+        if (OPTIONS.contains(name) || SERVICE_OPTIONS.contains(name)) {
+            return true;
+        }
+        int dot = name.indexOf('.');
+        return dot > 0 && SERVICES.contains(name.substring(0, dot)) && SERVICE_OPTIONS.contains(name.substring(dot + 1));
+    }
+
+    /**
+     * Requests per second sent to the gateway, whatever its response time
+     */
+    int getRate() {
+        return Integer.parseInt(options.getOrDefault("rate", "200"));
+    }
+
+    Duration getDuration() {
+        return duration("duration", "30s");
+    }
+
+    /**
+     * Run at the same rate before the measurement, not reported
+     */
+    Duration getWarmup() {
+        return duration("warmup", "10s");
+    }
+
+    Duration getTimeout() {
+        return duration("timeout", "10s");
+    }
+
+    /**
+     * Weight of each request type of the {@link LoadGenerator}, e.g. {@code owner-details:8,owner:1,vets:1}
+     */
+    Map<String, Integer> getMix() {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : options.getOrDefault("mix", "owner-details:8,owner:1,visits:1,vets:1").split(",")) {
+            String[] parts = entry.trim().split(":");
+            mix.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        return mix;
+    }
+
+    long getSeed() {
+        return Long.parseLong(options.getOrDefault("seed", "42"));
+    }
+
+    int getOwners() {
+        return Integer.parseInt(options.getOrDefault("owners", "10000"));
+    }
+
+    int getPetsPerOwner() {
+        return Integer.parseInt(options.getOrDefault("pets-per-owner", "2"));
+    }
+
+    int getVisitsPerPet() {
+        return Integer.parseInt(options.getOrDefault("visits-per-pet", "4"));
+    }
+
+    /**
+     * Folder receiving the full percentile distribution of each request type, none by default
+     */
+    String getOutput() {
+        return options.get("output");
+    }
+
+    /**
+     * Whether the gateway talks h2c to the stand-ins, instead of HTTP/1.1
+     */
+    boolean isH2c() {
+        return Boolean.parseBoolean(options.getOrDefault("h2c", "false"));
+    }
+
+    /**
+     * Minimum response time of the service
+     */
+    Duration getLatency(String serviceId) {
+        return DurationStyle.detectAndParse(serviceOption(serviceId, "latency", "5ms"));
+    }
+
+    /**
+     * Mean of the exponentially distributed time added to the minimum response time
+     */
+    Duration getLatencyTail(String serviceId) {
+        return DurationStyle.detectAndParse(serviceOption(serviceId, "latency-tail", "2ms"));
+    }
+
+    /**
+     * Fraction of the requests answered with the error status
+     */
+    double getErrorRate(String serviceId) {
+        return Double.parseDouble(serviceOption(serviceId, "error-rate", "0"));
+    }
+
+    int getErrorStatus(String serviceId) {
+        return Integer.parseInt(serviceOption(serviceId, "error-status", "503"));
+    }
+
+    String[] getGatewayArgs() {
+        return gatewayArgs.toArray(new String[0]);
+    }
+
+    private String serviceOption(String serviceId, String name, String defaultValue) {
+        return options.getOrDefault(serviceId + "." + name, options.getOrDefault(name, defaultValue));
+    }
+
+    private Duration duration(String name, String defaultValue) {
+        return DurationStyle.detectAndParse(options.getOrDefault(name, defaultValue));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.build;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build time fingerprinting and precompression of the gateway static assets, run by the
+ * exec-maven-plugin of the gateway on its {@code target/classes/static} folder.
+ * <p>
+ * Templates and stylesheets are hashed first, then the scripts with their {@code templateUrl} rewritten
+ * to the fingerprinted templates, then {@code index.html} with its script and stylesheet links
+ * rewritten. Each asset gets a gzip and a brotli variant, and the MD5 of every asset is written to
+ * {@code static-assets.properties} next to the {@code static} folder.
+ */
+public class StaticAssetsBuilder {
+
+    /**
+     * Quoted links to scripts, templates and stylesheets, possibly already fingerprinted by a previous build.
+     */
+    private static final Pattern LINK = Pattern.compile("((?:scripts|css)/[\\w/.-]*?)(?:-[0-9a-f]{32})?\\.(js|css|html)(?=[\"'])");
+
+    private final Path root;
+
+    private final Map<String, String> versions = new TreeMap<>();
+
+    StaticAssetsBuilder(Path root) {
+        this.root = root;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Brotli4jLoader.ensureAvailability();
+        StaticAssetsBuilder builder = new StaticAssetsBuilder(Path.of(args[0]));
+        List<Path> assets = builder.assets();
+        builder.process(assets, "html");
+        builder.process(assets, "css");
+        builder.process(assets, "js");
+        builder.process(List.of(builder.root.resolve("index.html")), "html");
+        builder.writeManifest();
+    }
+
+    private List<Path> assets() throws IOException {
+        List<Path> assets = new ArrayList<>();
+        for (String folder : List.of("scripts", "css")) {
+            Path dir = root.resolve(folder);
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.filter(Files::isRegularFile).forEach(assets::add);
+                }
+            }
+        }
+        return assets;
+    }
+
+    private void process(List<Path> assets, String extension) throws IOException, NoSuchAlgorithmException {
+        for (Path asset : assets) {
+            if (!asset.getFileName().toString().endsWith("." + extension)) {
+                continue;
+            }
+            String content = Files.readString(asset, StandardCharsets.UTF_8);
+            String rewritten = rewriteLinks(content);
+            if (!rewritten.equals(content)) {
+                Files.writeString(asset, rewritten, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = rewritten.getBytes(StandardCharsets.UTF_8);
+            versions.put(root.relativize(asset).toString().replace('\\', '/'), md5(bytes));
+            writeIfSmaller(asset, ".gz", gzip(bytes), bytes.length);
+            writeIfSmaller(asset, ".br", Encoder.compress(bytes, new Encoder.Parameters().setQuality(11)), bytes.length);
+        }
+    }
+
+    private String rewriteLinks(String content) {
+        Matcher matcher = LINK.matcher(content);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String version = versions.get(matcher.group(1) + "." + matcher.group(2));
+            String link = version == null ? matcher.group() : matcher.group(1) + "-" + version + "." + matcher.group(2);
+            matcher.appendReplacement(result, Matcher.quoteReplacement(link));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder("# Generated by StaticAssetsBuilder, content MD5 of the static assets\n");
+        versions.forEach((path, version) -> manifest.append(path).append('=').append(version).append('\n'));
+        Files.writeString(root.resolveSibling("static-assets.properties"), manifest, StandardCharsets.UTF_8);
+    }
+
+    private static void writeIfSmaller(Path asset, String suffix, byte[] compressed, int length) throws IOException {
+        Path variant = asset.resolveSibling(asset.getFileName() + suffix);
+        if (compressed.length < length) {
+            Files.write(variant, compressed);
+        } else {
+            Files.deleteIfExists(variant);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static String md5(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+    }
+}
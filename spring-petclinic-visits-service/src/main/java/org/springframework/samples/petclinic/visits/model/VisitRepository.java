@@ -19,6 +19,8 @@ import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository class for <code>Visit</code> domain objects All method names are compliant with Spring Data naming conventions so this interface can easily be extended for Spring
@@ -35,4 +37,13 @@ public interface VisitRepository extends JpaRepository<Visit, Integer> {
     List<Visit> findByPetId(int petId);
 
     List<Visit> findByPetIdIn(Collection<Integer> petIds);
+
+    List<VisitSummary> findSummariesByPetIdIn(Collection<Integer> petIds);
+
+    /**
+     * @return a marker for each pet with visits, none for the pets without any
+     */
+    @Query("SELECT new org.springframework.samples.petclinic.visits.model.VisitMarker(visit.petId, COUNT(visit), MAX(visit.id))"
+        + " FROM Visit visit WHERE visit.petId IN :petIds GROUP BY visit.petId")
+    List<VisitMarker> findMarkersByPetIdIn(@Param("petIds") Collection<Integer> petIds);
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Value;
+
+import java.util.Date;
+
+/**
+ * Projection of a {@link Visit} without its description, selected by the repository instead of the
+ * whole row when the client does not ask for the descriptions.
+ */
+@Value
+public class VisitSummary {
+
+    Integer id;
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    Date date;
+
+    int petId;
+}
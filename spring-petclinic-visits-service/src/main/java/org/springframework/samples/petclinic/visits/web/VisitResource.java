@@ -18,6 +18,7 @@ package org.springframework.samples.petclinic.visits.web;
 import java.util.List;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
 
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
@@ -66,14 +67,45 @@ class VisitResource {
         return visitRepository.findByPetId(petId);
     }
 
+    /**
+     * @param fields the visit fields to return, all of them by default. The descriptions are only loaded
+     *               when requested.
+     */
     @GetMapping("pets/visits")
-    public Visits read(@RequestParam("petId") List<Integer> petIds) {
+    public Visits read(@RequestParam("petId") List<Integer> petIds,
+                       @RequestParam(value = "fields", required = false) List<String> fields) {
+        if (fields != null && !fields.contains("description")) {
+            return new Visits(visitRepository.findSummariesByPetIdIn(petIds));
+        }
         final List<Visit> byPetIdIn = visitRepository.findByPetIdIn(petIds);
         return new Visits(byPetIdIn);
     }
 
+    /**
+     * Same lookup as {@link #read(List, List)} with the pet ids in the body, for lists too long for a query string.
+     */
+    @PostMapping("pets/visits/search")
+    public Visits search(@Valid @RequestBody VisitsQuery query) {
+        return read(query.getPetIds(), query.getFields());
+    }
+
+    /**
+     * Markers of the visits of the pets, for clients to tell whether the visits they hold are still current.
+     */
+    @GetMapping("pets/visits/markers")
+    public Visits readMarkers(@RequestParam("petId") List<Integer> petIds) {
+        return new Visits(visitRepository.findMarkersByPetIdIn(petIds));
+    }
+
     @Value
     static class Visits {
-        List<Visit> items;
+        List<?> items;
+    }
+
+    @Value
+    static class VisitsQuery {
+        @NotEmpty
+        List<Integer> petIds;
+        List<String> fields;
     }
 }
@@ -1,25 +1,44 @@
 package org.springframework.samples.petclinic.visits.web;
 
+import java.util.Date;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.visits.config.SmileConfig;
+import org.springframework.samples.petclinic.visits.model.VisitMarker;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
 
 import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.ArgumentMatchers.any;
 import static org.springframework.samples.petclinic.visits.model.Visit.visit;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(VisitResource.class)
+@Import(SmileConfig.class)
 @ActiveProfiles("test")
 class VisitResourceTest {
 
@@ -58,4 +77,71 @@ class VisitResourceTest {
             .andExpect(jsonPath("$.items[1].petId").value(222))
             .andExpect(jsonPath("$.items[2].petId").value(222));
     }
+
+    @Test
+    void shouldFetchVisitsWithoutDescriptions() throws Exception {
+        given(visitRepository.findSummariesByPetIdIn(asList(111, 222)))
+            .willReturn(
+                asList(
+                    new VisitSummary(1, new Date(), 111),
+                    new VisitSummary(2, new Date(), 222)
+                )
+            );
+
+        mvc.perform(get("/pets/visits?petId=111,222&fields=id,date,petId"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].id").value(1))
+            .andExpect(jsonPath("$.items[1].petId").value(222))
+            .andExpect(jsonPath("$.items[0].date").exists())
+            .andExpect(jsonPath("$.items[0].description").doesNotExist());
+        verify(visitRepository, never()).findByPetIdIn(any());
+    }
+
+    @Test
+    void shouldFetchVisitsInSmileFormat() throws Exception {
+        given(visitRepository.findByPetIdIn(asList(111)))
+            .willReturn(asList(visit().id(1).petId(111).description("First visit").build()));
+
+        byte[] smile = mvc.perform(get("/pets/visits?petId=111").accept("application/x-jackson-smile"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-jackson-smile"))
+            .andReturn().getResponse().getContentAsByteArray();
+        JsonNode visit = new ObjectMapper(new SmileFactory()).readTree(smile).get("items").get(0);
+        assertEquals("First visit", visit.get("description").asText());
+        assertTrue(visit.get("date").asText().matches("\\d{4}-\\d{2}-\\d{2}"));
+    }
+
+    @Test
+    void shouldSearchVisitsByPetIdsInTheBody() throws Exception {
+        given(visitRepository.findSummariesByPetIdIn(asList(111, 222)))
+            .willReturn(asList(new VisitSummary(1, new Date(), 111), new VisitSummary(2, new Date(), 222)));
+
+        mvc.perform(post("/pets/visits/search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"petIds\":[111,222],\"fields\":[\"id\",\"date\",\"petId\"]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].petId").value(111))
+            .andExpect(jsonPath("$.items[1].petId").value(222));
+    }
+
+    @Test
+    void shouldRejectASearchWithoutPetIds() throws Exception {
+        mvc.perform(post("/pets/visits/search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"petIds\":[]}"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldFetchVisitMarkers() throws Exception {
+        given(visitRepository.findMarkersByPetIdIn(asList(111, 222)))
+            .willReturn(asList(new VisitMarker(111, 2L, 7)));
+
+        mvc.perform(get("/pets/visits/markers?petId=111,222"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items.length()").value(1))
+            .andExpect(jsonPath("$.items[0].petId").value(111))
+            .andExpect(jsonPath("$.items[0].count").value(2))
+            .andExpect(jsonPath("$.items[0].lastVisitId").value(7));
+    }
 }